@@ -0,0 +1,70 @@
+/*
+ * CharSequenceReader Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.Reader;
+
+/**
+ * Unsynchronized Reader over a CharSequence, copying characters out in bulk where the sequence type allows it. Used by
+ * JsonParser to refill its buffer from in-memory input.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+class CharSequenceReader extends Reader {
+
+    private final CharSequence sequence;
+    private final String string;
+    private final int end;
+    private int position;
+
+    public CharSequenceReader(CharSequence sequence) {
+        this.sequence = sequence;
+        this.string = sequence instanceof String ? (String) sequence : null;
+        this.end = sequence.length();
+        this.position = 0;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (this.position >= this.end) {
+            return -1;
+        }
+        int count = Math.min(length, this.end - this.position);
+        if (this.string != null) {
+            this.string.getChars(this.position, this.position + count, buffer, offset);
+        } else if (this.sequence instanceof StringBuilder) {
+            ((StringBuilder) this.sequence).getChars(this.position, this.position + count, buffer, offset);
+        } else {
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = this.sequence.charAt(this.position + i);
+            }
+        }
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
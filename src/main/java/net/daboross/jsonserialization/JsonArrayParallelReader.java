@@ -0,0 +1,284 @@
+/*
+ * JsonArrayParallelReader Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Parses a single large top-level json array from a file or buffer on many threads at once.
+ * <p>
+ * The input is first scanned for the commas separating the items of the array, keeping track of strings, escapes and
+ * nesting, but without parsing anything. The items are then split into chunks of roughly equal size, and each chunk is
+ * parsed on an ExecutorService by its own {@link JsonParser}.
+ * <p>
+ * If the scan finds the input is not a well formed array, or any chunk fails to parse, the whole input is parsed again
+ * on the calling thread. Syntax errors are therefore reported exactly as {@link JsonParser#parseJsonArray()} would
+ * report them.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonArrayParallelReader {
+
+    private final ParallelInput input;
+
+    /**
+     * Creates a new JsonArrayParallelReader reading a UTF-8 encoded array from the given file. The file is memory
+     * mapped and closed before this constructor returns, and must not be modified while reading.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public JsonArrayParallelReader(File file) throws IOException {
+        this.input = new ParallelInput(file);
+    }
+
+    /**
+     * Creates a new JsonArrayParallelReader reading a UTF-8 encoded array from the remaining bytes of the given buffer.
+     * The position of the buffer is not changed, and its contents must not be modified while reading.
+     *
+     * @param input The buffer to read.
+     */
+    public JsonArrayParallelReader(ByteBuffer input) {
+        this.input = new ParallelInput(input);
+    }
+
+    /**
+     * Creates a new JsonArrayParallelReader reading a UTF-8 encoded array from the given bytes. The array is not
+     * copied, and must not be modified while reading.
+     *
+     * @param input The bytes to read.
+     */
+    public JsonArrayParallelReader(byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Sets the target size of each chunk. Chunks are extended to the end of the array item they would otherwise end
+     * in.
+     *
+     * @param chunkSize The target chunk size in bytes. The default is 4 MiB.
+     * @throws IllegalArgumentException If chunkSize is not positive.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.input.setChunkSize(chunkSize);
+    }
+
+    /**
+     * Sets the executor to parse chunks on.
+     *
+     * @param executor The executor to use, or null to create a thread pool with one thread per available processor
+     *                 for each call to parseJsonArray, and shut it down afterwards. Null is the default.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.input.executor = executor;
+    }
+
+    /**
+     * Sets the key cache used by the parser for each chunk. As a JsonKeyCache is thread safe, one cache is shared by
+     * all chunks.
+     *
+     * @param keyCache The cache to use, or null to create a new String for every key. Null is the default.
+     */
+    public void setKeyCache(JsonKeyCache keyCache) {
+        this.input.keyCache = keyCache;
+    }
+
+    /**
+     * Parses the array. Like {@link JsonParser#parseJsonArray()}, anything after the end of the array is ignored.
+     *
+     * @return A (new) List containing the items of the array, in order.
+     * @throws JsonException If the input does not start with an array, or there are any syntax errors in the array or
+     *                       items in the array.
+     * @throws IOException   If the input cannot be decoded, or the calling thread is interrupted.
+     */
+    public List<Object> parseJsonArray() throws IOException, JsonException {
+        long[] chunks = findChunks();
+        if (chunks == null) {
+            return parseSequentially();
+        }
+        List<Callable<List<Object>>> tasks = new ArrayList<Callable<List<Object>>>(chunks.length / 2);
+        for (int i = 0; i < chunks.length; i += 2) {
+            final long start = chunks[i];
+            final long end = chunks[i + 1];
+            tasks.add(new Callable<List<Object>>() {
+                @Override
+                public List<Object> call() throws IOException, JsonException {
+                    return parseChunk(start, end);
+                }
+            });
+        }
+        List<List<Object>> chunkItems;
+        try {
+            chunkItems = this.input.runAll(tasks);
+        } catch (ExecutionException ex) {
+            ParallelInput.unwrap(ex);
+            return parseSequentially();
+        }
+        int total = 0;
+        for (List<Object> items : chunkItems) {
+            total += items.size();
+        }
+        List<Object> result = new ArrayList<Object>(total);
+        for (List<Object> items : chunkItems) {
+            result.addAll(items);
+        }
+        return result;
+    }
+
+    private List<Object> parseSequentially() throws IOException, JsonException {
+        return this.input.createParser(0, this.input.size()).parseJsonArray();
+    }
+
+    /**
+     * Parses the comma separated items in a chunk.
+     *
+     * @param start The offset of the first byte of the first item.
+     * @param end   The offset of the comma or `]` after the last item.
+     * @return The items.
+     */
+    private List<Object> parseChunk(long start, long end) throws IOException, JsonException {
+        JsonParser parser = this.input.createParser(start, end);
+        List<Object> items = new ArrayList<Object>();
+        while (true) {
+            items.add(parser.nextItem());
+            int c;
+            do {
+                c = parser.nextAllowingEof();
+            } while (c >= 0 && c <= ' ');
+            if (c < 0) {
+                return items;
+            } else if (c != ',') {
+                throw parser.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Scans the input for the items of the top-level array, and groups them into chunks.
+     *
+     * @return The start and end offset of each chunk, or null if the input is not a well formed array.
+     */
+    private long[] findChunks() {
+        List<Long> chunks = new ArrayList<Long>();
+        int chunkSize = this.input.chunkSize;
+        long chunkStart = -1;
+        long lastComma = -1;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        boolean itemBlank = true;
+        ByteBuffer[] windows = this.input.getWindows();
+        // Skip a byte order mark, as the parser does.
+        int skip = 0;
+        if (windows.length > 0 && windows[0].remaining() >= 3) {
+            int first = windows[0].position();
+            if (windows[0].get(first) == (byte) 0xEF && windows[0].get(first + 1) == (byte) 0xBB
+                    && windows[0].get(first + 2) == (byte) 0xBF) {
+                skip = 3;
+            }
+        }
+        long windowStart = 0;
+        for (ByteBuffer window : windows) {
+            int base = window.position();
+            int remaining = window.remaining();
+            for (int i = skip; i < remaining; i++) {
+                int b = window.get(base + i) & 0xFF;
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '"') {
+                        inString = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    }
+                    continue;
+                }
+                if (depth == 0) {
+                    if (b == '[') {
+                        depth = 1;
+                        chunkStart = windowStart + i + 1;
+                    } else if (b > ' ') {
+                        return null;
+                    }
+                    continue;
+                }
+                switch (b) {
+                    case '"':
+                        inString = true;
+                        itemBlank = false;
+                        break;
+                    case '[':
+                    case '{':
+                        depth++;
+                        itemBlank = false;
+                        break;
+                    case ']':
+                    case '}':
+                        if (--depth > 0) {
+                            break;
+                        }
+                        long offset = windowStart + i;
+                        long end = itemBlank ? lastComma : offset;
+                        if (end > chunkStart) {
+                            chunks.add(chunkStart);
+                            chunks.add(end);
+                        }
+                        long[] result = new long[chunks.size()];
+                        for (int j = 0; j < result.length; j++) {
+                            result[j] = chunks.get(j);
+                        }
+                        return b == ']' ? result : null;
+                    case ',':
+                        if (depth == 1) {
+                            if (itemBlank) {
+                                return null;
+                            }
+                            lastComma = windowStart + i;
+                            itemBlank = true;
+                            if (lastComma - chunkStart >= chunkSize) {
+                                chunks.add(chunkStart);
+                                chunks.add(lastComma);
+                                chunkStart = lastComma + 1;
+                            }
+                        }
+                        break;
+                    default:
+                        if (b > ' ') {
+                            itemBlank = false;
+                        }
+                }
+            }
+            windowStart += remaining;
+            skip = 0;
+        }
+        return null;
+    }
+}
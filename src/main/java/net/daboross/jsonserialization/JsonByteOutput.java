@@ -0,0 +1,324 @@
+/*
+ * JsonByteOutput Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * JsonOutput encoding straight to UTF-8 bytes, without a Writer or CharsetEncoder. Bytes are collected in a byte
+ * array, and are either written to an OutputStream or ByteBuffer in large chunks, or kept in the array, which grows as
+ * needed.
+ * <p>
+ * Escaping is done while encoding, and runs of ASCII characters which need no escaping are copied with a tight loop.
+ * Unpaired surrogate characters are encoded as `?`, as an OutputStreamWriter would.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonByteOutput extends JsonOutput {
+
+    private static final int MINIMUM_BUFFER_SIZE = 16;
+    private final OutputStream stream;
+    private final ByteBuffer target;
+    private byte[] buffer;
+    private int position;
+
+    /**
+     * Creates a new JsonByteOutput collecting bytes in a growable array, which can be retrieved with
+     * {@link #toByteArray()}.
+     */
+    public JsonByteOutput() {
+        this(null, null, 256);
+    }
+
+    /**
+     * Creates a new JsonByteOutput writing to the given stream through an 8192 byte buffer.
+     *
+     * @param stream The stream to write to.
+     */
+    public JsonByteOutput(OutputStream stream) {
+        this(stream, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new JsonByteOutput writing to the given stream through a buffer of the given size.
+     *
+     * @param stream     The stream to write to.
+     * @param bufferSize The number of bytes to collect before writing them to the stream.
+     * @throws IllegalArgumentException If bufferSize is less than 16.
+     */
+    public JsonByteOutput(OutputStream stream, int bufferSize) {
+        this(stream, null, checkBufferSize(bufferSize));
+    }
+
+    /**
+     * Creates a new JsonByteOutput putting bytes into the given buffer, starting at its position. Bytes are collected
+     * in an 8192 byte array first, and put into the target when that is full, or when flushed or closed.
+     *
+     * @param target The buffer to put bytes into. If it runs out of space, a BufferOverflowException is thrown.
+     */
+    public JsonByteOutput(ByteBuffer target) {
+        this(null, target, DEFAULT_BUFFER_SIZE);
+    }
+
+    private JsonByteOutput(OutputStream stream, ByteBuffer target, int bufferSize) {
+        this(stream, target, new byte[bufferSize]);
+    }
+
+    /**
+     * Checks a buffer size given to a constructor before the buffer is allocated.
+     *
+     * @param bufferSize The buffer size.
+     * @return The buffer size.
+     * @throws IllegalArgumentException If bufferSize is less than 16.
+     */
+    private static int checkBufferSize(int bufferSize) {
+        if (bufferSize < MINIMUM_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Expected buffer size of at least 16, found " + bufferSize);
+        }
+        return bufferSize;
+    }
+
+    /**
+     * Creates a new JsonByteOutput writing to the given stream, using the given array as its buffer.
+     */
+    JsonByteOutput(OutputStream stream, byte[] buffer) {
+        this(stream, null, buffer);
+    }
+
+    private JsonByteOutput(OutputStream stream, ByteBuffer target, byte[] buffer) {
+        this.stream = stream;
+        this.target = target;
+        this.buffer = buffer;
+        this.position = 0;
+    }
+
+    /**
+     * Gets the array used as a buffer, so that it can be reused by another JsonByteOutput.
+     */
+    byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Gets a copy of the bytes written so far. Only available when writing to a growable array.
+     *
+     * @return A new array holding the output.
+     * @throws IllegalStateException If this is writing to a stream or ByteBuffer.
+     */
+    public byte[] toByteArray() {
+        if (this.stream != null || this.target != null) {
+            throw new IllegalStateException("Output is not being collected in an array");
+        }
+        return Arrays.copyOf(this.buffer, this.position);
+    }
+
+    /**
+     * Gets the number of bytes written so far and not yet passed on to the stream or ByteBuffer.
+     *
+     * @return The number of bytes in the buffer.
+     */
+    public int size() {
+        return this.position;
+    }
+
+    /**
+     * Passes all buffered bytes on to the stream or ByteBuffer, without flushing the stream. Does nothing when writing
+     * to a growable array.
+     */
+    void flushBuffer() throws IOException {
+        if (this.position > 0) {
+            if (this.stream != null) {
+                this.stream.write(this.buffer, 0, this.position);
+                this.position = 0;
+            } else if (this.target != null) {
+                this.target.put(this.buffer, 0, this.position);
+                this.position = 0;
+            }
+        }
+    }
+
+    /**
+     * Makes room in the buffer for the given number of bytes, which must not be more than 16.
+     */
+    private void require(int count) throws IOException {
+        if (this.position + count > this.buffer.length) {
+            if (this.stream == null && this.target == null) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + count));
+            } else {
+                flushBuffer();
+            }
+        }
+    }
+
+    @Override
+    void write(char c) throws IOException {
+        require(1);
+        this.buffer[this.position++] = (byte) c;
+    }
+
+    @Override
+    void writeRaw(String string) throws IOException {
+        final int length = string.length();
+        for (int i = 0; i < length; i++) {
+            require(4);
+            i = encode(string, i, length);
+        }
+    }
+
+    @Override
+    void writeSpaces(int count) throws IOException {
+        while (count > 0) {
+            require(1);
+            int run = Math.min(count, this.buffer.length - this.position);
+            Arrays.fill(this.buffer, this.position, this.position + run, (byte) ' ');
+            this.position += run;
+            count -= run;
+        }
+    }
+
+    @Override
+    void writeAscii(char[] chars, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(1);
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            int run = Math.min(length, buffer.length - position);
+            for (int end = offset + run; offset < end; offset++) {
+                buffer[position++] = (byte) chars[offset];
+            }
+            this.position = position;
+            length -= run;
+        }
+    }
+
+    @Override
+    void writeEscaped(String string) throws IOException {
+        final char[][] escapes = this.escapePolicy.escapes;
+        final boolean escapeAboveTable = this.escapePolicy.escapeAboveTable;
+        final int length = string.length();
+        int i = 0;
+        while (i < length) {
+            require(6);
+            // Copy ASCII characters until one needs escaping or the buffer is full.
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            int runEnd = i + Math.min(length - i, buffer.length - position);
+            char c = 0;
+            while (i < runEnd) {
+                c = string.charAt(i);
+                if (c >= 0x80 || (escapes[c] != null && (c != '/' || (i > 0 && string.charAt(i - 1) == '<')))) {
+                    break;
+                }
+                buffer[position++] = (byte) c;
+                i++;
+            }
+            this.position = position;
+            if (i == runEnd) {
+                continue;
+            }
+            require(6);
+            char[] escape = c < escapes.length ? escapes[c] : null;
+            if (escape != null) {
+                for (char e : escape) {
+                    this.buffer[this.position++] = (byte) e;
+                }
+                i++;
+            } else if (escapeAboveTable && c >= escapes.length) {
+                this.buffer[this.position++] = '\\';
+                this.buffer[this.position++] = 'u';
+                this.buffer[this.position++] = (byte) JsonEscapePolicy.HEX_DIGITS[c >>> 12];
+                this.buffer[this.position++] = (byte) JsonEscapePolicy.HEX_DIGITS[(c >>> 8) & 0xF];
+                this.buffer[this.position++] = (byte) JsonEscapePolicy.HEX_DIGITS[(c >>> 4) & 0xF];
+                this.buffer[this.position++] = (byte) JsonEscapePolicy.HEX_DIGITS[c & 0xF];
+                i++;
+            } else {
+                i = encode(string, i, length) + 1;
+            }
+        }
+    }
+
+    /**
+     * Encodes the character at the given index as UTF-8, or the surrogate pair starting there. There must be room for
+     * four bytes in the buffer.
+     *
+     * @return The index of the last character encoded.
+     */
+    private int encode(String string, int index, int length) {
+        final byte[] buffer = this.buffer;
+        char c = string.charAt(index);
+        if (c < 0x80) {
+            buffer[this.position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[this.position++] = (byte) (0xC0 | (c >>> 6));
+            buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (c < 0xD800 || c > 0xDFFF) {
+            buffer[this.position++] = (byte) (0xE0 | (c >>> 12));
+            buffer[this.position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+            buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (c <= 0xDBFF && index + 1 < length && string.charAt(index + 1) >= 0xDC00
+                && string.charAt(index + 1) <= 0xDFFF) {
+            int codePoint = Character.toCodePoint(c, string.charAt(index + 1));
+            buffer[this.position++] = (byte) (0xF0 | (codePoint >>> 18));
+            buffer[this.position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+            buffer[this.position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+            buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+            return index + 1;
+        } else {
+            buffer[this.position++] = '?';
+        }
+        return index;
+    }
+
+    /**
+     * Passes all buffered bytes on to the stream or ByteBuffer, and flushes the stream.
+     *
+     * @throws IOException If the stream throws an IOException.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (this.stream != null) {
+            this.stream.flush();
+        }
+    }
+
+    /**
+     * Passes all buffered bytes on to the stream or ByteBuffer, and closes the stream.
+     *
+     * @throws IOException If the stream throws an IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            if (this.stream != null) {
+                this.stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * JsonCharOutput Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JsonOutput collecting characters in a char array, and writing them to a Writer in large chunks. Strings are copied
+ * into the buffer in runs of characters which do not need escaping, rather than one character at a time.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonCharOutput extends JsonOutput {
+
+    private final Writer writer;
+    private final char[] buffer;
+    private int position;
+
+    /**
+     * Creates a new JsonCharOutput writing to the given writer through an 8192 character buffer.
+     *
+     * @param writer The writer to write to.
+     */
+    public JsonCharOutput(Writer writer) {
+        this(writer, new char[DEFAULT_BUFFER_SIZE]);
+    }
+
+    /**
+     * Creates a new JsonCharOutput writing to the given writer through a buffer of the given size.
+     *
+     * @param writer     The writer to write to.
+     * @param bufferSize The number of characters to collect before writing them to the writer.
+     * @throws IllegalArgumentException If bufferSize is less than 16.
+     */
+    public JsonCharOutput(Writer writer, int bufferSize) {
+        this(writer, new char[checkBufferSize(bufferSize)]);
+    }
+
+    /**
+     * Creates a new JsonCharOutput using the given array as its buffer.
+     */
+    JsonCharOutput(Writer writer, char[] buffer) {
+        this.writer = writer;
+        this.buffer = buffer;
+        this.position = 0;
+    }
+
+    private static int checkBufferSize(int bufferSize) {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("Expected buffer size of at least 16, found " + bufferSize);
+        }
+        return bufferSize;
+    }
+
+    /**
+     * Gets the array used as a buffer, so that it can be reused by another JsonCharOutput.
+     */
+    char[] getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Writes all buffered characters to the writer, without flushing the writer.
+     *
+     * @throws IOException If the writer throws an IOException.
+     */
+    void flushBuffer() throws IOException {
+        if (this.position > 0) {
+            this.writer.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+    }
+
+    /**
+     * Makes room in the buffer for the given number of characters, which must not be more than the buffer size.
+     */
+    private void require(int count) throws IOException {
+        if (this.position + count > this.buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    @Override
+    void write(char c) throws IOException {
+        if (this.position == this.buffer.length) {
+            flushBuffer();
+        }
+        this.buffer[this.position++] = c;
+    }
+
+    @Override
+    void writeRaw(String string) throws IOException {
+        writeRun(string, 0, string.length());
+    }
+
+    /**
+     * Copies part of a string into the buffer as is, flushing as many times as needed.
+     */
+    private void writeRun(String string, int start, int end) throws IOException {
+        while (start < end) {
+            if (this.position == this.buffer.length) {
+                flushBuffer();
+            }
+            int count = Math.min(end - start, this.buffer.length - this.position);
+            string.getChars(start, start + count, this.buffer, this.position);
+            this.position += count;
+            start += count;
+        }
+    }
+
+    @Override
+    void writeSpaces(int count) throws IOException {
+        while (count > 0) {
+            if (this.position == this.buffer.length) {
+                flushBuffer();
+            }
+            int run = Math.min(count, Math.min(SPACES.length, this.buffer.length - this.position));
+            System.arraycopy(SPACES, 0, this.buffer, this.position, run);
+            this.position += run;
+            count -= run;
+        }
+    }
+
+    @Override
+    void writeAscii(char[] chars, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (this.position == this.buffer.length) {
+                flushBuffer();
+            }
+            int run = Math.min(length, this.buffer.length - this.position);
+            System.arraycopy(chars, offset, this.buffer, this.position, run);
+            this.position += run;
+            offset += run;
+            length -= run;
+        }
+    }
+
+    @Override
+    void writeEscaped(String string) throws IOException {
+        final char[][] escapes = this.escapePolicy.escapes;
+        final boolean escapeAboveTable = this.escapePolicy.escapeAboveTable;
+        final int length = string.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            char[] escape;
+            if (c < escapes.length) {
+                escape = escapes[c];
+                if (escape == null || (c == '/' && (i == 0 || string.charAt(i - 1) != '<'))) {
+                    continue;
+                }
+            } else if (escapeAboveTable) {
+                escape = null;
+            } else {
+                continue;
+            }
+            writeRun(string, runStart, i);
+            runStart = i + 1;
+            require(6);
+            final char[] buffer = this.buffer;
+            if (escape != null) {
+                System.arraycopy(escape, 0, buffer, this.position, escape.length);
+                this.position += escape.length;
+            } else {
+                buffer[this.position++] = '\\';
+                buffer[this.position++] = 'u';
+                buffer[this.position++] = JsonEscapePolicy.HEX_DIGITS[c >>> 12];
+                buffer[this.position++] = JsonEscapePolicy.HEX_DIGITS[(c >>> 8) & 0xF];
+                buffer[this.position++] = JsonEscapePolicy.HEX_DIGITS[(c >>> 4) & 0xF];
+                buffer[this.position++] = JsonEscapePolicy.HEX_DIGITS[c & 0xF];
+            }
+        }
+        writeRun(string, runStart, length);
+    }
+
+    /**
+     * Writes all buffered characters to the writer, and flushes it.
+     *
+     * @throws IOException If the writer throws an IOException.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.writer.flush();
+    }
+
+    /**
+     * Writes all buffered characters to the writer, and closes it.
+     *
+     * @throws IOException If the writer throws an IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            this.writer.close();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * JsonCompactMap Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Insertion-ordered Map which stores its keys and values in two flat arrays, created by JsonParser for json objects
+ * when {@link JsonParser#setCompactObjects(boolean)} is enabled.
+ * <p>
+ * Small maps are searched linearly, comparing keys by identity first, which is fast for keys shared through a
+ * {@link JsonKeyCache}. Once a map grows past 8 entries, an open-addressed table of entry indices is added so that
+ * lookups stay constant time. Unlike a LinkedHashMap, there is no entry object per mapping, so a parsed map costs
+ * little more than its two arrays.
+ * <p>
+ * Maps parsed with {@link JsonParser#setShareObjectShapes(boolean)} enabled share one key array and index with every
+ * other map with the same keys in the same order, and only hold their own array of values. Such a map copies its keys
+ * the first time a key is added or removed.
+ * <p>
+ * Removing an entry moves all entries after it, so it takes time proportional to the size of the map. Null keys and
+ * values are allowed.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public final class JsonCompactMap extends AbstractMap<String, Object> {
+
+    /**
+     * Maps with more entries than this are indexed by hash.
+     */
+    static final int LINEAR_THRESHOLD = 8;
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    /**
+     * Table of entry index + 1 for each key, by hash, or null while the map is small. Zero marks an empty slot.
+     */
+    private int[] index;
+    /**
+     * True if the keys and index belong to a JsonShape, and must be copied before they are changed.
+     */
+    private boolean sharedKeys;
+    private int modCount;
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    /**
+     * Creates a new empty JsonCompactMap.
+     */
+    public JsonCompactMap() {
+        this(4);
+    }
+
+    /**
+     * Creates a new empty JsonCompactMap with room for the given number of entries.
+     *
+     * @param capacity The number of entries to make room for.
+     * @throws IllegalArgumentException If capacity is negative.
+     */
+    public JsonCompactMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Expected non-negative capacity, found " + capacity);
+        }
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+    }
+
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private int indexOf(Object key) {
+        final String[] keys = this.keys;
+        if (this.index == null) {
+            for (int i = 0; i < this.size; i++) {
+                String candidate = keys[i];
+                if (candidate == key || (key != null && key.equals(candidate))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        final int[] index = this.index;
+        final int mask = index.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot] - 1;
+            if (entry < 0) {
+                return -1;
+            }
+            String candidate = keys[entry];
+            if (candidate == key || (key != null && key.equals(candidate))) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Creates the hash index for the given keys.
+     *
+     * @param keys     The keys to index.
+     * @param size     The number of keys.
+     * @param capacity The number of keys the index should have room for, at least size.
+     * @return The index, or null if there are few enough keys to search linearly.
+     */
+    static int[] buildIndex(String[] keys, int size, int capacity) {
+        if (size <= LINEAR_THRESHOLD) {
+            return null;
+        }
+        int[] index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        for (int i = 0; i < size; i++) {
+            addToIndex(index, keys, i);
+        }
+        return index;
+    }
+
+    private static void addToIndex(int[] index, String[] keys, int entry) {
+        final int mask = index.length - 1;
+        int slot = hash(keys[entry]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+    }
+
+    private void rebuildIndex() {
+        this.index = buildIndex(this.keys, this.size, this.keys.length);
+    }
+
+    /**
+     * Shares the keys and index of the shape with the same keys as this map, if it can be shared, and otherwise trims
+     * this map to its size.
+     *
+     * @param root The root of the shape tree to find the shape in.
+     */
+    void shareShape(JsonShape root) {
+        JsonShape shape = root.find(this.keys, this.size);
+        if (shape == null) {
+            trimToSize();
+        } else {
+            share(shape);
+        }
+    }
+
+    /**
+     * Replaces the keys and index of this map with those of a shape holding the same keys in the same order.
+     */
+    private void share(JsonShape shape) {
+        this.keys = shape.keys;
+        this.index = shape.index;
+        if (this.values.length > this.size) {
+            this.values = Arrays.copyOf(this.values, this.size);
+        }
+        this.sharedKeys = true;
+    }
+
+    /**
+     * Gives this map its own copy of its keys and index, with room for more keys, if they belong to a shape.
+     */
+    private void unshare() {
+        if (this.sharedKeys) {
+            int capacity = Math.max(4, this.size * 2);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.sharedKeys = false;
+            rebuildIndex();
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int entry = indexOf(key);
+        return entry < 0 ? null : this.values[entry];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int entry = indexOf(key);
+        if (entry >= 0) {
+            Object old = this.values[entry];
+            this.values[entry] = value;
+            return old;
+        }
+        this.modCount++;
+        unshare();
+        boolean grown = false;
+        if (this.size == this.keys.length) {
+            int capacity = Math.max(4, this.size * 2);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            grown = true;
+        }
+        this.keys[this.size] = key;
+        this.values[this.size] = value;
+        this.size++;
+        if (this.index != null && !grown) {
+            addToIndex(this.index, this.keys, this.size - 1);
+        } else if (this.size > LINEAR_THRESHOLD) {
+            // The index is sized for the capacity, so it is recreated whenever the arrays grow.
+            rebuildIndex();
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int entry = indexOf(key);
+        if (entry < 0) {
+            return null;
+        }
+        Object old = this.values[entry];
+        removeAt(entry);
+        return old;
+    }
+
+    private void removeAt(int entry) {
+        this.modCount++;
+        unshare();
+        int moved = this.size - entry - 1;
+        System.arraycopy(this.keys, entry + 1, this.keys, entry, moved);
+        System.arraycopy(this.values, entry + 1, this.values, entry, moved);
+        this.size--;
+        this.keys[this.size] = null;
+        this.values[this.size] = null;
+        if (this.index != null) {
+            rebuildIndex();
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.modCount++;
+        unshare();
+        Arrays.fill(this.keys, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+        this.index = null;
+    }
+
+    /**
+     * Shrinks the key and value arrays to the number of entries.
+     */
+    void trimToSize() {
+        if (!this.sharedKeys && this.keys.length > this.size) {
+            this.keys = Arrays.copyOf(this.keys, this.size);
+            this.values = Arrays.copyOf(this.values, this.size);
+            if (this.index != null) {
+                rebuildIndex();
+            }
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new EntrySet();
+        }
+        return this.entrySet;
+    }
+
+    /**
+     * Writes this map as a json object, straight from the key and value arrays.
+     */
+    void write(JsonOutput output, int indentFactor, int indent) throws JsonException, IOException {
+        output.write('{');
+        for (int i = 0; i < this.size; i++) {
+            output.writeMember(i, this.size, this.keys[i], this.values[i], indentFactor, indent);
+        }
+        output.writeObjectEnd(this.size, indentFactor, indent);
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return JsonCompactMap.this.size;
+        }
+
+        @Override
+        public void clear() {
+            JsonCompactMap.this.clear();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private int next;
+        private int last = -1;
+        private int expectedModCount = JsonCompactMap.this.modCount;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < JsonCompactMap.this.size;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (JsonCompactMap.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.next >= JsonCompactMap.this.size) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.next++;
+            return new Entry(this.last);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last < 0) {
+                throw new IllegalStateException();
+            }
+            if (JsonCompactMap.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(this.last);
+            this.next = this.last;
+            this.last = -1;
+            this.expectedModCount = JsonCompactMap.this.modCount;
+        }
+    }
+
+    /**
+     * Entry reading and writing through to the arrays at a fixed index.
+     */
+    private class Entry implements Map.Entry<String, Object> {
+
+        private final int entry;
+
+        Entry(int entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return JsonCompactMap.this.keys[this.entry];
+        }
+
+        @Override
+        public Object getValue() {
+            return JsonCompactMap.this.values[this.entry];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = JsonCompactMap.this.values[this.entry];
+            JsonCompactMap.this.values[this.entry] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            Object key = getKey();
+            Object value = getValue();
+            return (key == null ? other.getKey() == null : key.equals(other.getKey()))
+                    && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object key = getKey();
+            Object value = getValue();
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
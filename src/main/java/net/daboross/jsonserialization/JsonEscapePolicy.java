@@ -0,0 +1,100 @@
+/*
+ * JsonEscapePolicy Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+/**
+ * Which characters a {@link JsonOutput} escapes in strings. Each policy has its own precomputed table of escape
+ * sequences, so characters which a policy leaves alone cost nothing beyond a table lookup.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public enum JsonEscapePolicy {
+    /**
+     * The policy used by {@link JsonSerialization}. Escapes `"`, `\`, control characters, U+0080 to U+009F and U+2000
+     * to U+20FF, and `/` directly after `<`.
+     */
+    DEFAULT(0x2100, false, true, ""),
+    /**
+     * Escapes only what RFC 8259 requires: `"`, `\` and characters below U+0020. This gives the smallest output, and
+     * is the fastest to write.
+     */
+    MINIMAL(0x80, false, false, ""),
+    /**
+     * Escapes `"`, `\`, control characters, `/` directly after `<`, and every character above U+007F, so that the
+     * output is plain ASCII.
+     */
+    ASCII_ONLY(0x80, true, true, ""),
+    /**
+     * Escapes everything {@link #DEFAULT} does, and also `<`, `>`, `&` and `'`, so that the output can be embedded in
+     * html.
+     */
+    HTML_SAFE(0x2100, false, true, "<>&'");
+
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /**
+     * The escape sequence to write for each character in the table which must be escaped, or null for characters
+     * written as is. `/` is only escaped directly after `<`.
+     */
+    final char[][] escapes;
+    /**
+     * Whether every character past the end of the table is escaped.
+     */
+    final boolean escapeAboveTable;
+
+    JsonEscapePolicy(int tableSize, boolean escapeAboveTable, boolean escapeSpecial, String extraCharacters) {
+        this.escapeAboveTable = escapeAboveTable;
+        this.escapes = new char[tableSize][];
+        for (int c = 0; c < ' '; c++) {
+            this.escapes[c] = unicodeEscape((char) c);
+        }
+        this.escapes['\\'] = new char[]{'\\', '\\'};
+        this.escapes['\"'] = new char[]{'\\', '\"'};
+        this.escapes['\b'] = new char[]{'\\', 'b'};
+        this.escapes['\t'] = new char[]{'\\', 't'};
+        this.escapes['\n'] = new char[]{'\\', 'n'};
+        this.escapes['\f'] = new char[]{'\\', 'f'};
+        this.escapes['\r'] = new char[]{'\\', 'r'};
+        if (escapeSpecial) {
+            if (extraCharacters.indexOf('<') < 0) {
+                // `</` can only appear if `<` itself is written as is.
+                this.escapes['/'] = new char[]{'\\', '/'};
+            }
+            for (int c = 0x80; c < Math.min(0xA0, tableSize); c++) {
+                this.escapes[c] = unicodeEscape((char) c);
+            }
+            for (int c = 0x2000; c < Math.min(0x2100, tableSize); c++) {
+                this.escapes[c] = unicodeEscape((char) c);
+            }
+        }
+        for (char c : extraCharacters.toCharArray()) {
+            this.escapes[c] = unicodeEscape(c);
+        }
+    }
+
+    private static char[] unicodeEscape(char c) {
+        // HEX_DIGITS is not set yet while the constants are being constructed.
+        return new char[]{'\\', 'u', Character.forDigit(c >>> 12, 16), Character.forDigit((c >>> 8) & 0xF, 16),
+                Character.forDigit((c >>> 4) & 0xF, 16), Character.forDigit(c & 0xF, 16)};
+    }
+}
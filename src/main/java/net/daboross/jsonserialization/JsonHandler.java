@@ -0,0 +1,70 @@
+/*
+ * JsonHandler Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+
+/**
+ * Callbacks for each part of a json value, in document order, as passed by {@link JsonParser#parse(JsonHandler)}. This
+ * allows processing documents without building a Map or List for every object and array.
+ * <p>
+ * Each object produces a call to startObject(), then a call to key() before each of its values, and finally a call to
+ * endObject(). Each array produces a call to startArray(), calls for each of its values, and then a call to
+ * endArray().
+ * <p>
+ * Any method may throw a JsonException or IOException to stop parsing; the exception is passed on to the caller of
+ * {@link JsonParser#parse(JsonHandler)}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public interface JsonHandler {
+
+    void startObject() throws JsonException, IOException;
+
+    /**
+     * Called before each value in an object.
+     *
+     * @param key The key of the value.
+     */
+    void key(String key) throws JsonException, IOException;
+
+    void endObject() throws JsonException, IOException;
+
+    void startArray() throws JsonException, IOException;
+
+    void endArray() throws JsonException, IOException;
+
+    void stringValue(String value) throws JsonException, IOException;
+
+    /**
+     * Called for a number value.
+     *
+     * @param value An Integer, Long or Double.
+     */
+    void numberValue(Number value) throws JsonException, IOException;
+
+    void booleanValue(boolean value) throws JsonException, IOException;
+
+    void nullValue() throws JsonException, IOException;
+}
@@ -0,0 +1,406 @@
+/*
+ * JsonIndexedParser Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two stage parser for json held entirely in memory, modeled on simdjson.
+ * <p>
+ * Stage 1 scans the input in blocks of 64 characters, building a 64-bit mask per block for each class of character
+ * (whitespace, structural characters, quotes and backslashes). Escaped characters and the insides of strings are then
+ * found for the whole block at once with bit arithmetic, without a branch per character, and the position of every
+ * structural character, string and scalar outside of a string is recorded in an index.
+ * <p>
+ * Stage 2 walks that index to build values, jumping straight from one token to the next instead of looking at each
+ * character between them. Strings, numbers and literals are read by a {@link JsonParser} over the same array, so they
+ * are parsed exactly as {@link JsonParser#nextItem()} would parse them.
+ * <p>
+ * If stage 2 finds anything other than well formed json, the input is parsed again from the start by a plain
+ * JsonParser. Both the results and any syntax errors are therefore the same as {@link JsonParser#nextItem()}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonIndexedParser {
+
+    private static final int BLOCK_SIZE = 64;
+    private static final long ODD_BITS = 0xAAAAAAAAAAAAAAAAL;
+    private static final int CLASS_WHITESPACE = 1;
+    private static final int CLASS_OPERATOR = 2;
+    private static final int CLASS_QUOTE = 4;
+    private static final int CLASS_BACKSLASH = 8;
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (int c = 0; c <= ' '; c++) {
+            CHARACTER_CLASSES[c] = CLASS_WHITESPACE;
+        }
+        for (char c : "{}[],:".toCharArray()) {
+            CHARACTER_CLASSES[c] = CLASS_OPERATOR;
+        }
+        CHARACTER_CLASSES['"'] = CLASS_QUOTE;
+        CHARACTER_CLASSES['\\'] = CLASS_BACKSLASH;
+    }
+
+    private final char[] input;
+    private final int offset;
+    private final int length;
+    private JsonKeyCache keyCache;
+    private boolean compactObjects;
+    private boolean shareObjectShapes;
+    /**
+     * Root of the shapes shared by parsed objects, kept between calls to {@link #parseItem()}.
+     */
+    private JsonShape shapes;
+    /**
+     * Positions in the input of each token, found by stage 1. Null until the first parse.
+     */
+    private int[] structurals;
+    private int structuralCount;
+    /**
+     * Position in structurals of the next token, used by stage 2.
+     */
+    private int next;
+    private JsonParser parser;
+
+    /**
+     * Thrown by stage 2 when the input is not well formed json, to fall back to a plain JsonParser.
+     */
+    private static class FallbackException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Creates a new JsonIndexedParser which will read from a copy of the given string.
+     *
+     * @param input The string to read from.
+     */
+    public JsonIndexedParser(String input) {
+        this(input.toCharArray());
+    }
+
+    /**
+     * Creates a new JsonIndexedParser which will read directly from the given array. The array is not copied, and must
+     * not be modified while parsing.
+     *
+     * @param input The characters to read from.
+     */
+    public JsonIndexedParser(char[] input) {
+        this(input, 0, input.length);
+    }
+
+    /**
+     * Creates a new JsonIndexedParser which will read directly from a range of the given array. The array is not
+     * copied, and must not be modified while parsing.
+     *
+     * @param input  The array to read from.
+     * @param offset The index of the first character to read.
+     * @param length The number of characters to read.
+     */
+    public JsonIndexedParser(char[] input, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > input.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset " + offset + ", length " + length
+                    + ", array length " + input.length);
+        }
+        this.input = input;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Sets the cache used to share String instances between repeated object keys.
+     *
+     * @param keyCache The cache to use, or null to create a new String for every key. Null is the default.
+     */
+    public void setKeyCache(JsonKeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * Sets whether json objects are parsed into a {@link JsonCompactMap} instead of a LinkedHashMap.
+     *
+     * @param compactObjects True to parse objects into JsonCompactMaps. False is the default.
+     * @see JsonParser#setCompactObjects(boolean)
+     */
+    public void setCompactObjects(boolean compactObjects) {
+        this.compactObjects = compactObjects;
+    }
+
+    /**
+     * Sets whether json objects with the same keys in the same order share one key array.
+     *
+     * @param shareObjectShapes True to share key arrays between objects. False is the default.
+     * @see JsonParser#setShareObjectShapes(boolean)
+     */
+    public void setShareObjectShapes(boolean shareObjectShapes) {
+        this.shareObjectShapes = shareObjectShapes;
+    }
+
+    /**
+     * Parses the first item in the input, giving the same result as {@link JsonParser#nextItem()}. Anything after the
+     * first item is ignored.
+     *
+     * @return A Map, List, String, Integer, Long, Double, Boolean or null.
+     * @throws JsonException If there is a syntax error in the item.
+     */
+    public Object parseItem() throws JsonException {
+        if (this.shareObjectShapes && this.shapes == null) {
+            this.shapes = new JsonShape();
+        }
+        try {
+            if (this.structurals == null) {
+                index();
+            }
+            this.parser = new JsonParser(this.input, this.offset, this.length);
+            this.parser.setKeyCache(this.keyCache);
+            this.parser.setCompactObjects(this.compactObjects);
+            this.next = 0;
+            return parseValue();
+        } catch (FallbackException ex) {
+            return parseSequentially();
+        } catch (JsonException ex) {
+            return parseSequentially();
+        } catch (IOException ex) {
+            throw new AssertionError(ex); // Array parsers never read from a Reader.
+        } finally {
+            this.parser = null;
+        }
+    }
+
+    private Object parseSequentially() throws JsonException {
+        JsonParser sequential = new JsonParser(this.input, this.offset, this.length);
+        sequential.setKeyCache(this.keyCache);
+        sequential.setCompactObjects(this.compactObjects);
+        sequential.setShapes(this.shareObjectShapes ? this.shapes : null);
+        try {
+            return sequential.nextItem();
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Stage 1: finds the position of every structural character, opening quote and start of a scalar outside of a
+     * string.
+     */
+    private void index() {
+        final char[] input = this.input;
+        int[] structurals = new int[Math.max(16, this.length / 8)];
+        int count = 0;
+        // Carried from one block to the next: all ones if the previous block ended inside a string, one if its last
+        // character escapes the next character, and one if its last character may be followed by a scalar.
+        long previousInString = 0;
+        long previousEscaped = 0;
+        long previousBoundary = 1;
+        for (int blockStart = 0; blockStart < this.length; blockStart += BLOCK_SIZE) {
+            int blockLength = Math.min(BLOCK_SIZE, this.length - blockStart);
+            long whitespace = 0;
+            long operators = 0;
+            long quotes = 0;
+            long backslashes = 0;
+            for (int i = 0, base = this.offset + blockStart; i < blockLength; i++) {
+                char c = input[base + i];
+                int characterClass = c < 128 ? CHARACTER_CLASSES[c] : 0;
+                whitespace |= (long) (characterClass & CLASS_WHITESPACE) << i;
+                operators |= (long) ((characterClass & CLASS_OPERATOR) >>> 1) << i;
+                quotes |= (long) ((characterClass & CLASS_QUOTE) >>> 2) << i;
+                backslashes |= (long) ((characterClass & CLASS_BACKSLASH) >>> 3) << i;
+            }
+            // Every character in an odd length run of backslashes escapes the character after the run. Subtracting
+            // the starts of runs from alternating bits carries through each run and flips the bit after the run if it
+            // is escaped.
+            long potentialEscapes = backslashes & ~previousEscaped;
+            long codes = (((potentialEscapes << 1) | ODD_BITS) - potentialEscapes) ^ ODD_BITS;
+            long escaped = codes ^ (backslashes | previousEscaped);
+            previousEscaped = (codes & backslashes) >>> 63;
+
+            // A prefix xor of the unescaped quotes sets every bit from an opening quote up to its closing quote.
+            long realQuotes = quotes & ~escaped;
+            long inString = realQuotes;
+            inString ^= inString << 1;
+            inString ^= inString << 2;
+            inString ^= inString << 4;
+            inString ^= inString << 8;
+            inString ^= inString << 16;
+            inString ^= inString << 32;
+            inString ^= previousInString;
+            previousInString = inString >> 63;
+
+            long boundaries = operators | whitespace | realQuotes;
+            long scalarStarts = ~boundaries & ~inString & ((boundaries << 1) | previousBoundary);
+            if (blockLength < BLOCK_SIZE) {
+                scalarStarts &= (1L << blockLength) - 1;
+            }
+            previousBoundary = boundaries >>> 63;
+            long tokens = (operators & ~inString) | (realQuotes & inString) | scalarStarts;
+
+            if (count + Long.bitCount(tokens) > structurals.length) {
+                structurals = Arrays.copyOf(structurals, Math.max(structurals.length * 2, count + BLOCK_SIZE));
+            }
+            while (tokens != 0) {
+                structurals[count++] = this.offset + blockStart + Long.numberOfTrailingZeros(tokens);
+                tokens &= tokens - 1;
+            }
+        }
+        this.structurals = structurals;
+        this.structuralCount = count;
+    }
+
+    /**
+     * Stage 2: parses the value starting at the next token.
+     */
+    private Object parseValue() throws JsonException, FallbackException, IOException {
+        int position = nextToken();
+        switch (this.input[position]) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                this.parser.seek(position);
+                return this.parser.nextString();
+            case '}':
+            case ']':
+            case ',':
+            case ':':
+                throw new FallbackException();
+            default:
+                this.parser.seek(position);
+                Object value = this.parser.nextRawString();
+                checkScalarEnd();
+                return value;
+        }
+    }
+
+    private Map<String, Object> parseObject() throws JsonException, FallbackException, IOException {
+        Map<String, Object> map;
+        if (this.compactObjects || this.shareObjectShapes) {
+            map = new JsonCompactMap();
+        } else {
+            map = new LinkedHashMap<String, Object>();
+        }
+        if (peekToken() == '}') {
+            this.next++;
+            return finishObject(map);
+        }
+        while (true) {
+            int position = nextToken();
+            char c = this.input[position];
+            if (c != '"') {
+                // Unquoted keys are allowed, but are rare enough to leave to the plain parser.
+                throw new FallbackException();
+            }
+            this.parser.seek(position);
+            String key = this.parser.nextKey();
+            if (this.input[nextToken()] != ':') {
+                throw new FallbackException();
+            }
+            if (map.put(key, parseValue()) != null) {
+                throw new FallbackException();
+            }
+            c = this.input[nextToken()];
+            if (c == ',') {
+                if (peekToken() == '}') {
+                    this.next++;
+                    return finishObject(map);
+                }
+            } else if (c == '}') {
+                return finishObject(map);
+            } else {
+                throw new FallbackException();
+            }
+        }
+    }
+
+    private Map<String, Object> finishObject(Map<String, Object> map) {
+        if (map instanceof JsonCompactMap) {
+            if (this.shareObjectShapes) {
+                ((JsonCompactMap) map).shareShape(this.shapes);
+            } else {
+                ((JsonCompactMap) map).trimToSize();
+            }
+        }
+        return map;
+    }
+
+    private List<Object> parseArray() throws JsonException, FallbackException, IOException {
+        List<Object> list = new ArrayList<Object>();
+        if (peekToken() == ']') {
+            this.next++;
+            return list;
+        }
+        while (true) {
+            list.add(parseValue());
+            char c = this.input[nextToken()];
+            if (c == ',') {
+                if (peekToken() == ']') {
+                    this.next++;
+                    return list;
+                }
+            } else if (c == ']') {
+                return list;
+            } else {
+                throw new FallbackException();
+            }
+        }
+    }
+
+    private int nextToken() throws FallbackException {
+        if (this.next >= this.structuralCount) {
+            throw new FallbackException();
+        }
+        return this.structurals[this.next++];
+    }
+
+    private char peekToken() throws FallbackException {
+        if (this.next >= this.structuralCount) {
+            throw new FallbackException();
+        }
+        return this.input[this.structurals[this.next]];
+    }
+
+    /**
+     * Checks that only whitespace follows a scalar before the next token. Stage 1 treats any character which ends a
+     * scalar in the parser, but is not whitespace or a structural character, as part of the scalar.
+     */
+    private void checkScalarEnd() throws FallbackException {
+        int end = this.next < this.structuralCount ? this.structurals[this.next] : this.offset + this.length;
+        for (int i = this.parser.getBufferPosition(); i < end; i++) {
+            if (this.input[i] > ' ') {
+                throw new FallbackException();
+            }
+        }
+    }
+}
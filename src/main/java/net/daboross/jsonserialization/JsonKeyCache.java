@@ -0,0 +1,105 @@
+/*
+ * JsonKeyCache Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+/**
+ * Bounded cache of object key Strings, used by {@link JsonParser#setKeyCache(JsonKeyCache)} so that repeated keys are
+ * parsed into the same String instance instead of a new String for every occurrence.
+ * <p>
+ * Keys are looked up by their raw characters, so a hit does not allocate. The cache is a fixed-size table with one key
+ * per slot, and a new key simply replaces whatever key was in its slot. Keys longer than 64 characters are never
+ * cached.
+ * <p>
+ * A JsonKeyCache is safe to share between parsers on different threads. Threads may race to fill the same slot, in
+ * which case one of them just creates an extra String.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonKeyCache {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_KEY_LENGTH = 64;
+    private final String[] keys;
+    private final int mask;
+
+    /**
+     * Creates a new JsonKeyCache holding up to 1024 keys.
+     */
+    public JsonKeyCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new JsonKeyCache.
+     *
+     * @param capacity The maximum number of keys to hold. This is rounded up to a power of two.
+     * @throws IllegalArgumentException If capacity is not positive, or is larger than 2^30.
+     */
+    public JsonKeyCache(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Expected capacity between 1 and 2^30, found " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.keys = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the canonical String for the given characters, creating and caching it if it is not already cached.
+     *
+     * @param chars  The array holding the key characters.
+     * @param offset The index of the first character of the key.
+     * @param length The number of characters in the key.
+     * @return A String with the given characters.
+     */
+    public String get(char[] chars, int offset, int length) {
+        if (length > MAX_KEY_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & this.mask;
+        String cached = this.keys[slot];
+        if (cached != null && cached.length() == length && matches(cached, chars, offset)) {
+            return cached;
+        }
+        String key = new String(chars, offset, length);
+        this.keys[slot] = key;
+        return key;
+    }
+
+    private static boolean matches(String cached, char[] chars, int offset) {
+        for (int i = 0, length = cached.length(); i < length; i++) {
+            if (cached.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
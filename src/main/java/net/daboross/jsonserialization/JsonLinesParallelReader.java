@@ -0,0 +1,260 @@
+/*
+ * JsonLinesParallelReader Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Reads newline-delimited json (JSON Lines) from a file or buffer on many threads at once.
+ * <p>
+ * The input is split into chunks of roughly equal size, each ending just after a newline. Each chunk is then parsed on
+ * an ExecutorService by its own {@link JsonParser} and {@link JsonLinesReader}. Files are memory mapped, so chunks are
+ * decoded straight from the page cache.
+ * <p>
+ * If any chunk fails to parse, the input is read again on the calling thread, so that the exception reports the same
+ * position as reading the whole input with a single JsonLinesReader would. Exceptions thrown by a
+ * {@link RecordConsumer} are passed on as they are.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonLinesParallelReader {
+
+    private final ParallelInput input;
+
+    /**
+     * Receives records from {@link #readAll(RecordConsumer)}.
+     */
+    public interface RecordConsumer {
+
+        /**
+         * Accepts one record. This is called concurrently from many threads, in no particular order.
+         *
+         * @param record The record: a Map, List, String, Integer, Long, Double, Boolean or null.
+         * @throws JsonException To stop reading. The exception is passed on to the caller of readAll.
+         */
+        void accept(Object record) throws JsonException;
+    }
+
+    /**
+     * Creates a new JsonLinesParallelReader reading UTF-8 encoded records from the given file. The file is memory
+     * mapped and closed before this constructor returns, and must not be modified while reading.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public JsonLinesParallelReader(File file) throws IOException {
+        this.input = new ParallelInput(file);
+    }
+
+    /**
+     * Creates a new JsonLinesParallelReader reading UTF-8 encoded records from the remaining bytes of the given buffer.
+     * The position of the buffer is not changed, and its contents must not be modified while reading.
+     *
+     * @param input The buffer to read.
+     */
+    public JsonLinesParallelReader(ByteBuffer input) {
+        this.input = new ParallelInput(input);
+    }
+
+    /**
+     * Creates a new JsonLinesParallelReader reading UTF-8 encoded records from the given array. The array is not
+     * copied, and must not be modified while reading.
+     *
+     * @param input The bytes to read.
+     */
+    public JsonLinesParallelReader(byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Sets the target size of each chunk. Chunks are extended to the end of the line they would otherwise end in.
+     *
+     * @param chunkSize The target chunk size in bytes. The default is 4 MiB.
+     * @throws IllegalArgumentException If chunkSize is not positive.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.input.setChunkSize(chunkSize);
+    }
+
+    /**
+     * Sets the executor to parse chunks on.
+     *
+     * @param executor The executor to use, or null to create a thread pool with one thread per available processor
+     *                 for each call to readAll, and shut it down afterwards. Null is the default.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.input.executor = executor;
+    }
+
+    /**
+     * Sets the key cache used by the parser for each chunk. As a JsonKeyCache is thread safe, one cache is shared by
+     * all chunks.
+     *
+     * @param keyCache The cache to use, or null to create a new String for every key. Null is the default.
+     */
+    public void setKeyCache(JsonKeyCache keyCache) {
+        this.input.keyCache = keyCache;
+    }
+
+    /**
+     * Reads all records, and returns them in the order they appear in the input.
+     *
+     * @return A new List holding every record.
+     * @throws JsonException If there is a syntax error in any record.
+     * @throws IOException   If the input cannot be decoded, or the calling thread is interrupted.
+     */
+    public List<Object> readAll() throws IOException, JsonException {
+        List<List<Object>> chunkRecords = run(null);
+        int total = 0;
+        for (List<Object> records : chunkRecords) {
+            total += records.size();
+        }
+        List<Object> result = new ArrayList<Object>(total);
+        for (List<Object> records : chunkRecords) {
+            result.addAll(records);
+        }
+        return result;
+    }
+
+    /**
+     * Reads all records, passing each one to the given consumer as soon as it is parsed. The consumer is called from
+     * many threads at once, and records are not passed in any particular order.
+     *
+     * @param consumer The consumer to pass records to.
+     * @throws JsonException If there is a syntax error in any record, or the consumer throws a JsonException.
+     * @throws IOException   If the input cannot be decoded, or the calling thread is interrupted.
+     */
+    public void readAll(RecordConsumer consumer) throws IOException, JsonException {
+        run(consumer);
+    }
+
+    private List<List<Object>> run(final RecordConsumer consumer) throws IOException, JsonException {
+        List<Callable<List<Object>>> tasks = new ArrayList<Callable<List<Object>>>();
+        long start = 0;
+        while (start < this.input.size()) {
+            final long chunkStart = start;
+            final long chunkEnd = findLineEnd(start + this.input.chunkSize);
+            tasks.add(new Callable<List<Object>>() {
+                @Override
+                public List<Object> call() throws IOException, JsonException, ConsumerException {
+                    return readChunk(chunkStart, chunkEnd, consumer);
+                }
+            });
+            start = chunkEnd;
+        }
+        try {
+            return this.input.runAll(tasks);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ConsumerException) {
+                throw ((ConsumerException) ex.getCause()).exception;
+            }
+            JsonException cause = ParallelInput.unwrap(ex);
+            // Find the first syntax error again from the start of the input, so its position is not relative to the
+            // chunk it is in. Chunks only end after a newline, and records cannot span lines, so the same error is
+            // found again.
+            JsonLinesReader reader = new JsonLinesReader(this.input.createParser(0, this.input.size()));
+            while (reader.hasNextValue()) {
+                reader.nextValue();
+            }
+            throw cause;
+        }
+    }
+
+    /**
+     * Parses every record in a chunk.
+     *
+     * @param start    The offset of the first byte of the chunk.
+     * @param end      The offset after the last byte of the chunk.
+     * @param consumer The consumer to pass records to, or null to collect them.
+     * @return The records, or an empty list if they were passed to the consumer.
+     */
+    private List<Object> readChunk(long start, long end, RecordConsumer consumer)
+            throws IOException, JsonException, ConsumerException {
+        JsonLinesReader reader = new JsonLinesReader(this.input.createParser(start, end));
+        List<Object> records = new ArrayList<Object>();
+        while (reader.hasNextValue()) {
+            Object record = reader.nextValue();
+            if (consumer == null) {
+                records.add(record);
+            } else {
+                try {
+                    consumer.accept(record);
+                } catch (JsonException ex) {
+                    throw new ConsumerException(ex);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Finds the offset just after the first newline at or after the given offset.
+     *
+     * @param from The offset to start searching from.
+     * @return The offset after the newline, or the size of the input if there is none.
+     */
+    private long findLineEnd(long from) {
+        long windowStart = 0;
+        for (ByteBuffer window : this.input.getWindows()) {
+            int remaining = window.remaining();
+            long windowEnd = windowStart + remaining;
+            if (from < windowEnd) {
+                int base = window.position();
+                for (int i = (int) Math.max(0, from - windowStart); i < remaining; i++) {
+                    if (window.get(base + i) == '\n') {
+                        return windowStart + i + 1;
+                    }
+                }
+            }
+            windowStart = windowEnd;
+        }
+        return this.input.size();
+    }
+
+    /**
+     * Carries an exception thrown by a RecordConsumer out of a chunk, to tell it apart from a syntax error.
+     */
+    private static class ConsumerException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+        private final JsonException exception;
+
+        ConsumerException(JsonException exception) {
+            super(exception);
+            this.exception = exception;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
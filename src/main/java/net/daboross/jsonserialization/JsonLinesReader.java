@@ -0,0 +1,136 @@
+/*
+ * JsonLinesReader Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads newline-delimited json (JSON Lines), where each line holds one json value. All records are read with a single
+ * {@link JsonParser}, so its buffers are reused instead of setting up a new parser for every record.
+ * <p>
+ * Blank lines are skipped. A record which continues onto another line, or is followed by anything other than
+ * whitespace on the same line, is a syntax error.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonLinesReader implements Iterable<Object> {
+
+    private final JsonParser parser;
+
+    /**
+     * Creates a new JsonLinesReader.
+     *
+     * @param parser The parser to read records from. Key caching and other options set on it apply to every record.
+     *               From now on it rejects newlines inside of values.
+     */
+    public JsonLinesReader(JsonParser parser) {
+        this.parser = parser;
+        parser.setSingleLine(true);
+    }
+
+    /**
+     * Checks whether there is another record, skipping any whitespace and blank lines before it.
+     *
+     * @return True if there is another record, false if the end of the input has been reached.
+     * @throws JsonException Never, but declared by the underlying parser.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public boolean hasNextValue() throws IOException, JsonException {
+        int c;
+        do {
+            c = this.parser.nextAllowingEof();
+        } while (c >= 0 && c <= ' ');
+        if (c < 0) {
+            return false;
+        }
+        this.parser.back();
+        return true;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return The record: a Map, List, String, Integer, Long, Double, Boolean or null.
+     * @throws JsonException If there is no next record, there is a syntax error in the record, or the record spans
+     *                       more than one line or is not followed by a newline or the end of the input.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public Object nextValue() throws IOException, JsonException {
+        if (!hasNextValue()) {
+            throw this.parser.syntaxError("Unexpected end of file");
+        }
+        Object value = this.parser.nextItem();
+        int c;
+        do {
+            c = this.parser.nextAllowingEof();
+        } while (c == ' ' || c == '\t' || c == '\r');
+        if (c >= 0 && c != '\n') {
+            throw this.parser.syntaxError("Expected newline after record, found `" + (char) c + "`");
+        }
+        return value;
+    }
+
+    /**
+     * Gets an iterator over the remaining records. As Iterator methods cannot throw checked exceptions, any
+     * JsonException or IOException is wrapped in a RuntimeException.
+     *
+     * @return An iterator reading records from this reader.
+     */
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return hasNextValue();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                } catch (JsonException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return nextValue();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                } catch (JsonException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
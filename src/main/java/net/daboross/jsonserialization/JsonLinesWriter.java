@@ -0,0 +1,92 @@
+/*
+ * JsonLinesWriter Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writes newline-delimited json (JSON Lines), one json value per line. All records go through one shared buffer, which
+ * is only written to the target when full, or when flushed or closed.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonLinesWriter implements Closeable, Flushable {
+
+    private final JsonOutput output;
+
+    /**
+     * Creates a new JsonLinesWriter writing to the given Writer.
+     *
+     * @param writer The writer to write records to.
+     */
+    public JsonLinesWriter(Writer writer) {
+        this.output = new JsonCharOutput(writer);
+    }
+
+    /**
+     * Creates a new JsonLinesWriter writing UTF-8 encoded records to the given stream.
+     *
+     * @param stream The stream to write records to.
+     */
+    public JsonLinesWriter(OutputStream stream) {
+        this.output = new JsonByteOutput(stream);
+    }
+
+    /**
+     * Writes a single record, followed by a newline.
+     *
+     * @param value The value to write. Any value accepted by {@link JsonSerialization#writeJsonValue(Writer, Object,
+     *              int, int)} may be used.
+     * @throws JsonException If the value is of an unknown type, or contains a value of an unknown type.
+     * @throws IOException   If the underlying writer throws an IOException.
+     */
+    public void write(Object value) throws IOException, JsonException {
+        this.output.writeValue(value);
+        this.output.write('\n');
+    }
+
+    /**
+     * Writes all buffered records to the underlying writer, and flushes it.
+     *
+     * @throws IOException If the underlying writer throws an IOException.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * Writes all buffered records to the underlying writer, and closes it.
+     *
+     * @throws IOException If the underlying writer throws an IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        this.output.close();
+    }
+}
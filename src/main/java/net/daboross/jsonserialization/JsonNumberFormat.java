@@ -0,0 +1,312 @@
+/*
+ * JsonNumberFormat Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.math.BigInteger;
+
+/**
+ * Formats numbers as characters straight into an array, without creating Strings.
+ * <p>
+ * Doubles are formatted with the Schubfach algorithm by Raffaello Giulietti ("The Schubfach way to render doubles",
+ * 2020), which finds the shortest decimal that rounds back to the same double, picking the closest one if several
+ * have that length. The result is laid out in the same format as {@link Double#toString(double)}, and is the same
+ * string Double.toString gives on Java 19 and later, which use the same algorithm. Older versions of
+ * Double.toString sometimes give a longer decimal.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+final class JsonNumberFormat {
+
+    /**
+     * The most characters any of the format methods write.
+     */
+    static final int MAX_LENGTH = 32;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << 52;
+    private static final int C_TINY = 3;
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final int H = 17;
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long[] POWERS_OF_TEN = new long[19];
+    /**
+     * For each k from K_MIN to K_MAX, the upper and lower 63 bits of g = floor(10^-k / 2^r) + 1, where r is chosen so
+     * that 2^125 &lt;= 10^-k / 2^r &lt; 2^126.
+     */
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+    private static final char[] DIGIT_TENS = new char[100];
+    private static final char[] DIGIT_ONES = new char[100];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (char) ('0' + i / 10);
+            DIGIT_ONES[i] = (char) ('0' + i % 10);
+        }
+        BigInteger mask63 = BigInteger.valueOf(MASK_63);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            BigInteger numerator = k <= 0 ? BigInteger.TEN.pow(-k) : BigInteger.ONE;
+            BigInteger denominator = k <= 0 ? BigInteger.ONE : BigInteger.TEN.pow(k);
+            int r = flog2pow10(-k) - 125;
+            BigInteger beta = r <= 0 ? numerator.shiftLeft(-r).divide(denominator)
+                    : numerator.divide(denominator.shiftLeft(r));
+            BigInteger g = beta.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.and(mask63).longValue();
+        }
+    }
+
+    private JsonNumberFormat() {
+    }
+
+    /**
+     * Writes the decimal digits of a long, in the same format as {@link Long#toString(long)}.
+     *
+     * @return The index after the last character written.
+     */
+    static int formatLong(long value, char[] out, int offset) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                "-9223372036854775808".getChars(0, 20, out, offset);
+                return offset + 20;
+            }
+            out[offset++] = '-';
+            value = -value;
+        }
+        int length = digitCount(value);
+        writeDigits(value, out, offset + length, length);
+        return offset + length;
+    }
+
+    /**
+     * Writes the shortest decimal which rounds to the given double, in the same format as
+     * {@link Double#toString(double)}.
+     *
+     * @param value The double to write, which must be finite.
+     * @return The index after the last character written.
+     */
+    static int formatDouble(double value, char[] out, int offset) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (bits < 0) {
+            out[offset++] = '-';
+        }
+        long t = bits & (C_MIN - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq != 0) {
+            // Normal value: value = c 2^q
+            int q = bq + Q_MIN - 1;
+            long c = C_MIN | t;
+            if (q < 0 && q > -53) {
+                // Integers are written exactly.
+                long f = c >> -q;
+                if (f << -q == c) {
+                    return formatDecimal(f, 0, out, offset);
+                }
+            }
+            return toDecimal(q, c, 0, out, offset);
+        } else if (t != 0) {
+            // Subnormal value
+            return t < C_TINY ? toDecimal(Q_MIN, 10 * t, -1, out, offset) : toDecimal(Q_MIN, t, 0, out, offset);
+        }
+        "0.0".getChars(0, 3, out, offset);
+        return offset + 3;
+    }
+
+    /**
+     * Finds the decimal to write for the double c 2^q, and writes it.
+     */
+    private static int toDecimal(int q, long c, int dk, char[] out, int offset) {
+        int odd = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // The gap below a power of two is half the gap above it.
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        long vb = roundToOdd(g1, g0, cb << h);
+        long vbl = roundToOdd(g1, g0, cbl << h);
+        long vbr = roundToOdd(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try one digit less than the length of s first.
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + odd <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + odd <= vbr;
+            if (upin != wpin) {
+                return formatDecimal(upin ? sp10 : tp10, k, out, offset);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + odd <= s << 2;
+        boolean win = (t << 2) + odd <= vbr;
+        if (uin != win) {
+            return formatDecimal(uin ? s : t, k + dk, out, offset);
+        }
+        // Both are in the rounding interval, so pick the closest, or the even one if they are equally close.
+        long cmp = vb - ((s + t) << 1);
+        return formatDecimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, out, offset);
+    }
+
+    /**
+     * Writes f 10^e, laid out as Double.toString does: plain decimal between 10^-3 and 10^7, and scientific notation
+     * otherwise, always with at least one digit after the decimal point.
+     */
+    private static int formatDecimal(long f, int e, char[] out, int offset) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int length = digitCount(f);
+        // The number of digits before the decimal point in plain notation.
+        int point = length + e;
+        if (point > 0 && point <= 7) {
+            if (length <= point) {
+                writeDigits(f, out, offset + length, length);
+                offset += length;
+                for (int i = length; i < point; i++) {
+                    out[offset++] = '0';
+                }
+                out[offset++] = '.';
+                out[offset++] = '0';
+                return offset;
+            }
+            long fraction = POWERS_OF_TEN[length - point];
+            writeDigits(f / fraction, out, offset + point, point);
+            out[offset + point] = '.';
+            writeDigits(f % fraction, out, offset + length + 1, length - point);
+            return offset + length + 1;
+        } else if (point <= 0 && point > -3) {
+            out[offset++] = '0';
+            out[offset++] = '.';
+            for (int i = point; i < 0; i++) {
+                out[offset++] = '0';
+            }
+            writeDigits(f, out, offset + length, length);
+            return offset + length;
+        }
+        long rest = POWERS_OF_TEN[length - 1];
+        out[offset++] = (char) ('0' + f / rest);
+        out[offset++] = '.';
+        if (length == 1) {
+            out[offset++] = '0';
+        } else {
+            writeDigits(f % rest, out, offset + length - 1, length - 1);
+            offset += length - 1;
+        }
+        out[offset++] = 'E';
+        return formatLong(point - 1, out, offset);
+    }
+
+    /**
+     * Writes exactly the given number of digits of a non-negative value, with leading zeros, ending just before end.
+     */
+    private static void writeDigits(long value, char[] out, int end, int count) {
+        int position = end;
+        while (value >= 100) {
+            int pair = (int) (value % 100);
+            value /= 100;
+            out[--position] = DIGIT_ONES[pair];
+            out[--position] = DIGIT_TENS[pair];
+        }
+        int last = (int) value;
+        out[--position] = DIGIT_ONES[last];
+        if (last >= 10) {
+            out[--position] = DIGIT_TENS[last];
+        }
+        while (position > end - count) {
+            out[--position] = '0';
+        }
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (count < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[count]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Computes the rounded to odd upper 64 bits of (g1 2^63 + g0) cp / 2^127.
+     */
+    private static long roundToOdd(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+    }
+
+    /**
+     * Computes the upper 64 bits of the 128 bit product of two signed longs.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * Computes floor(log10(2^e)).
+     */
+    private static int flog10pow2(int e) {
+        return (int) (e * 661971961083L >> 41);
+    }
+
+    /**
+     * Computes floor(log10(3/4 2^e)).
+     */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661971961083L + -274743187321L >> 41);
+    }
+
+    /**
+     * Computes floor(log2(10^e)).
+     */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913124641741L >> 38);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * JsonNumberList Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Unmodifiable List of numbers stored in a primitive array, created by JsonParser for json arrays of numbers when
+ * {@link JsonParser#setCompactNumericArrays(boolean)} is enabled.
+ * <p>
+ * Elements are boxed as they are read, to the same Integer, Long or Double the parser would otherwise have produced,
+ * so the list is equal to the ArrayList which would otherwise have been returned. Integers are held in an int array
+ * until one too large for an int is added, then in a long array. Decimals are held in a double array. A list never
+ * holds both integers and decimals, as the decimal 1.0 would not be equal to the Integer 1.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public final class JsonNumberList extends AbstractList<Object> implements RandomAccess {
+
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private int size;
+
+    /**
+     * Creates a new empty JsonNumberList.
+     */
+    JsonNumberList() {
+    }
+
+    /**
+     * Adds a number if it can be stored alongside the numbers already in the list.
+     *
+     * @param value The value to add.
+     * @return True if the value was added, false if it is not an Integer, Long or Double, or is a decimal while the
+     * list holds integers or the other way around.
+     */
+    boolean addNumber(Object value) {
+        if (value instanceof Integer) {
+            if (this.doubles != null) {
+                return false;
+            }
+            int number = ((Integer) value).intValue();
+            if (this.longs != null) {
+                addLong(number);
+            } else {
+                if (this.ints == null) {
+                    this.ints = new int[8];
+                } else if (this.size == this.ints.length) {
+                    this.ints = Arrays.copyOf(this.ints, this.size * 2);
+                }
+                this.ints[this.size++] = number;
+            }
+            return true;
+        } else if (value instanceof Long) {
+            if (this.doubles != null) {
+                return false;
+            }
+            if (this.longs == null) {
+                this.longs = new long[Math.max(8, this.size * 2)];
+                for (int i = 0; i < this.size; i++) {
+                    this.longs[i] = this.ints[i];
+                }
+                this.ints = null;
+            }
+            addLong(((Long) value).longValue());
+            return true;
+        } else if (value instanceof Double) {
+            if (this.doubles == null) {
+                if (this.size != 0) {
+                    return false;
+                }
+                this.doubles = new double[8];
+            } else if (this.size == this.doubles.length) {
+                this.doubles = Arrays.copyOf(this.doubles, this.size * 2);
+            }
+            this.doubles[this.size++] = ((Double) value).doubleValue();
+            return true;
+        }
+        return false;
+    }
+
+    private void addLong(long number) {
+        if (this.size == this.longs.length) {
+            this.longs = Arrays.copyOf(this.longs, this.size * 2);
+        }
+        this.longs[this.size++] = number;
+    }
+
+    /**
+     * Shrinks the backing array to the number of elements.
+     */
+    void trimToSize() {
+        if (this.ints != null && this.ints.length > this.size) {
+            this.ints = Arrays.copyOf(this.ints, this.size);
+        } else if (this.longs != null && this.longs.length > this.size) {
+            this.longs = Arrays.copyOf(this.longs, this.size);
+        } else if (this.doubles != null && this.doubles.length > this.size) {
+            this.doubles = Arrays.copyOf(this.doubles, this.size);
+        }
+    }
+
+    @Override
+    public Object get(int index) {
+        checkIndex(index);
+        if (this.ints != null) {
+            return Integer.valueOf(this.ints[index]);
+        } else if (this.longs != null) {
+            long value = this.longs[index];
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return Integer.valueOf((int) value);
+            }
+            return Long.valueOf(value);
+        }
+        return Double.valueOf(this.doubles[index]);
+    }
+
+    /**
+     * Gets an element without boxing it, converted to a long as {@link Number#longValue()} would.
+     *
+     * @param index The index of the element.
+     * @return The element.
+     * @throws IndexOutOfBoundsException If index is negative or not less than the size of this list.
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+        if (this.ints != null) {
+            return this.ints[index];
+        } else if (this.longs != null) {
+            return this.longs[index];
+        }
+        return (long) this.doubles[index];
+    }
+
+    /**
+     * Gets an element without boxing it, converted to a double as {@link Number#doubleValue()} would.
+     *
+     * @param index The index of the element.
+     * @return The element.
+     * @throws IndexOutOfBoundsException If index is negative or not less than the size of this list.
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        if (this.ints != null) {
+            return this.ints[index];
+        } else if (this.longs != null) {
+            return this.longs[index];
+        }
+        return this.doubles[index];
+    }
+
+    /**
+     * Checks whether this list holds decimals rather than integers.
+     *
+     * @return True if the elements are Doubles, false if they are Integers and Longs or there are no elements.
+     */
+    public boolean isDecimal() {
+        return this.doubles != null;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+    }
+
+    /**
+     * Writes this list as a json array, straight from the primitive array.
+     */
+    void write(JsonOutput output, int indentFactor, int indent) throws JsonException, IOException {
+        output.write('[');
+        final int newIndent = indent + indentFactor;
+        for (int i = 0; i < this.size; i++) {
+            output.writeElementStart(i == 0, indentFactor, newIndent);
+            if (this.ints != null) {
+                output.writeLong(this.ints[i]);
+            } else if (this.longs != null) {
+                output.writeLong(this.longs[i]);
+            } else {
+                output.writeDouble(this.doubles[i]);
+            }
+        }
+        output.writeArrayEnd(indentFactor, indent);
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * JsonOutput Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Buffered json serializer. Output is collected in a reusable buffer, and only passed on to the target in large
+ * chunks, when flushed or when closed.
+ * <p>
+ * With the default escape policy, the output is exactly the same as the matching methods in
+ * {@link JsonSerialization}, which are implemented with a JsonOutput.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public abstract class JsonOutput implements Closeable, Flushable {
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    /**
+     * Spaces to copy indentation from, in pieces if the indentation is longer.
+     */
+    static final char[] SPACES = new char[256];
+
+    static {
+        for (int i = 0; i < SPACES.length; i++) {
+            SPACES[i] = ' ';
+        }
+    }
+
+    JsonEscapePolicy escapePolicy;
+    /**
+     * Scratch space numbers are formatted into before being copied to the target.
+     */
+    private final char[] digits = new char[JsonNumberFormat.MAX_LENGTH];
+
+    JsonOutput() {
+        this.escapePolicy = JsonEscapePolicy.DEFAULT;
+    }
+
+    /**
+     * Sets which characters are escaped in strings written after this call.
+     *
+     * @param escapePolicy The policy to use. {@link JsonEscapePolicy#DEFAULT} is the default.
+     */
+    public void setEscapePolicy(JsonEscapePolicy escapePolicy) {
+        if (escapePolicy == null) {
+            throw new NullPointerException("escapePolicy");
+        }
+        this.escapePolicy = escapePolicy;
+    }
+
+    /**
+     * Gets which characters are escaped in strings.
+     *
+     * @return The current policy.
+     */
+    public JsonEscapePolicy getEscapePolicy() {
+        return this.escapePolicy;
+    }
+
+    /**
+     * Writes a single character, which must not need escaping.
+     */
+    abstract void write(char c) throws IOException;
+
+    /**
+     * Writes a string as is, without quoting or escaping it.
+     */
+    abstract void writeRaw(String string) throws IOException;
+
+    /**
+     * Writes the given number of spaces.
+     */
+    abstract void writeSpaces(int count) throws IOException;
+
+    /**
+     * Writes the contents of a string with json escapes, without the surrounding quotes.
+     */
+    abstract void writeEscaped(String string) throws IOException;
+
+    /**
+     * Writes a range of characters which are all ASCII and need no escaping.
+     */
+    abstract void writeAscii(char[] chars, int offset, int length) throws IOException;
+
+    /**
+     * Writes a number in a format valid for json. Integers, Longs, Shorts, Bytes and Doubles are formatted straight
+     * into the output, other numbers are written with their toString().
+     *
+     * @param number The number to write.
+     * @throws JsonException If number is not finite.
+     * @throws IOException   If the target throws an IOException.
+     */
+    public void writeNumber(Number number) throws JsonException, IOException {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short
+                || number instanceof Byte) {
+            writeLong(number.longValue());
+        } else if (number instanceof Double) {
+            writeDouble(number.doubleValue());
+        } else {
+            double value = number.doubleValue();
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new JsonException("Expected finite number, found `" + number + "`");
+            }
+            writeRaw(number.toString());
+        }
+    }
+
+    /**
+     * Writes a long, in the same format as {@link Long#toString(long)}.
+     *
+     * @param value The number to write.
+     * @throws IOException If the target throws an IOException.
+     */
+    public void writeLong(long value) throws IOException {
+        writeAscii(this.digits, 0, JsonNumberFormat.formatLong(value, this.digits, 0));
+    }
+
+    /**
+     * Writes a double as the shortest decimal which parses back to the same double, in the same format as
+     * {@link Double#toString(double)}.
+     *
+     * @param value The number to write.
+     * @throws JsonException If value is not finite.
+     * @throws IOException   If the target throws an IOException.
+     */
+    public void writeDouble(double value) throws JsonException, IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JsonException("Expected finite number, found `" + value + "`");
+        }
+        writeAscii(this.digits, 0, JsonNumberFormat.formatDouble(value, this.digits, 0));
+    }
+
+    /**
+     * Writes a string as an escaped json string.
+     *
+     * @param string The string to write.
+     * @throws IOException If the target throws an IOException.
+     */
+    public void writeString(String string) throws IOException {
+        write('\"');
+        writeEscaped(string);
+        write('\"');
+    }
+
+    /**
+     * Writes a json object from the given Map. Please note that this assumes that no data structures are cyclical, and
+     * that all iterables are finite.
+     *
+     * @param values The value map. All keys will be proccessed with String.valueOf(), and values will be formatted
+     *               depending on type.
+     * @throws JsonException If a value of an unknown type is found.
+     * @throws IOException   If the target throws an IOException.
+     * @see JsonSerialization#writeJsonObject(java.io.Writer, Map, int, int)
+     */
+    public void writeObject(Map<?, ?> values, int indentFactor, int indent) throws JsonException, IOException {
+        if (values instanceof JsonCompactMap) {
+            ((JsonCompactMap) values).write(this, indentFactor, indent);
+        } else {
+            writeEntries(values.entrySet().iterator(), values.size(), indentFactor, indent);
+        }
+    }
+
+    /**
+     * Writes a json object from the entries of a Map.
+     *
+     * @param entries The entries to write.
+     * @param length  The number of entries.
+     */
+    void writeEntries(Iterator<? extends Map.Entry<?, ?>> entries, int length, int indentFactor, int indent)
+            throws JsonException, IOException {
+        write('{');
+        if (length == 1) {
+            Map.Entry<?, ?> entry = entries.next();
+            writeMember(0, 1, entry.getKey(), entry.getValue(), indentFactor, indent);
+        } else if (length != 0) {
+            for (int member = 0; entries.hasNext(); member++) {
+                Map.Entry<?, ?> entry = entries.next();
+                writeMember(member, length, entry.getKey(), entry.getValue(), indentFactor, indent);
+            }
+        }
+        writeObjectEnd(length, indentFactor, indent);
+    }
+
+    /**
+     * Writes one member of an object after its separator and indentation. An object with only one member is written
+     * on one line.
+     *
+     * @param member The index of the member in the object.
+     * @param length The number of members in the object.
+     * @param key    The key, which will be proccessed with String.valueOf().
+     * @param indent The indentation of the object.
+     */
+    void writeMember(int member, int length, Object key, Object value, int indentFactor, int indent)
+            throws JsonException, IOException {
+        int valueIndent = indent;
+        if (length != 1) {
+            if (member != 0) {
+                write(',');
+            }
+            if (indentFactor > 0) {
+                write('\n');
+            }
+            valueIndent = indent + indentFactor;
+            writeSpaces(valueIndent);
+        }
+        writeString(String.valueOf(key));
+        write(':');
+        if (indentFactor > 0) {
+            write(' ');
+        }
+        writeValue(value, indentFactor, valueIndent);
+    }
+
+    /**
+     * Writes the indentation and closing brace after the last member of an object.
+     *
+     * @param length The number of members in the object.
+     */
+    void writeObjectEnd(int length, int indentFactor, int indent) throws IOException {
+        if (length > 1) {
+            if (indentFactor > 0) {
+                write('\n');
+            }
+            writeSpaces(indent);
+        }
+        write('}');
+    }
+
+    /**
+     * Writes a json array from the given Iterable. Please note that this assumes that no data structures are
+     * cyclical, and that all iterables are finite.
+     *
+     * @param iterable The iterable to produce values to put in the json array.
+     * @throws JsonException If a value of an unknown type is found.
+     * @throws IOException   If the target throws an IOException.
+     * @see JsonSerialization#writeJsonArray(java.io.Writer, Iterable, int, int)
+     */
+    public void writeArray(Iterable<?> iterable, int indentFactor, int indent) throws JsonException, IOException {
+        write('[');
+        final int newIndent = indent + indentFactor;
+        if (iterable instanceof RandomAccess && iterable instanceof List) {
+            // Index lists which support it rather than allocating an Iterator.
+            List<?> list = (List<?>) iterable;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                writeElementStart(i == 0, indentFactor, newIndent);
+                writeValue(list.get(i), indentFactor, newIndent);
+            }
+            writeArrayEnd(indentFactor, indent);
+            return;
+        }
+        boolean first = true;
+        for (Object obj : iterable) {
+            writeElementStart(first, indentFactor, newIndent);
+            writeValue(obj, indentFactor, newIndent);
+            first = false;
+        }
+        writeArrayEnd(indentFactor, indent);
+    }
+
+    /**
+     * Writes a json array from the given array. Please note that this assumes that no data structures are cyclical.
+     *
+     * @param values The values to put in the json array.
+     * @throws JsonException If a value of an unknown type is found.
+     * @throws IOException   If the target throws an IOException.
+     */
+    public void writeArray(Object[] values, int indentFactor, int indent) throws JsonException, IOException {
+        write('[');
+        final int newIndent = indent + indentFactor;
+        for (int i = 0; i < values.length; i++) {
+            writeElementStart(i == 0, indentFactor, newIndent);
+            writeValue(values[i], indentFactor, newIndent);
+        }
+        writeArrayEnd(indentFactor, indent);
+    }
+
+    /**
+     * Writes a json array of numbers from the given array, without boxing them.
+     *
+     * @param values The numbers to put in the json array.
+     * @throws IOException If the target throws an IOException.
+     */
+    public void writeArray(int[] values, int indentFactor, int indent) throws IOException {
+        write('[');
+        final int newIndent = indent + indentFactor;
+        for (int i = 0; i < values.length; i++) {
+            writeElementStart(i == 0, indentFactor, newIndent);
+            writeLong(values[i]);
+        }
+        writeArrayEnd(indentFactor, indent);
+    }
+
+    /**
+     * Writes a json array of numbers from the given array, without boxing them.
+     *
+     * @param values The numbers to put in the json array.
+     * @throws IOException If the target throws an IOException.
+     */
+    public void writeArray(long[] values, int indentFactor, int indent) throws IOException {
+        write('[');
+        final int newIndent = indent + indentFactor;
+        for (int i = 0; i < values.length; i++) {
+            writeElementStart(i == 0, indentFactor, newIndent);
+            writeLong(values[i]);
+        }
+        writeArrayEnd(indentFactor, indent);
+    }
+
+    /**
+     * Writes a json array of numbers from the given array, without boxing them.
+     *
+     * @param values The numbers to put in the json array.
+     * @throws JsonException If a number is not finite.
+     * @throws IOException   If the target throws an IOException.
+     */
+    public void writeArray(double[] values, int indentFactor, int indent) throws JsonException, IOException {
+        write('[');
+        final int newIndent = indent + indentFactor;
+        for (int i = 0; i < values.length; i++) {
+            writeElementStart(i == 0, indentFactor, newIndent);
+            writeDouble(values[i]);
+        }
+        writeArrayEnd(indentFactor, indent);
+    }
+
+    /**
+     * Writes a json array of booleans from the given array, without boxing them.
+     *
+     * @param values The booleans to put in the json array.
+     * @throws IOException If the target throws an IOException.
+     */
+    public void writeArray(boolean[] values, int indentFactor, int indent) throws IOException {
+        write('[');
+        final int newIndent = indent + indentFactor;
+        for (int i = 0; i < values.length; i++) {
+            writeElementStart(i == 0, indentFactor, newIndent);
+            writeRaw(values[i] ? "true" : "false");
+        }
+        writeArrayEnd(indentFactor, indent);
+    }
+
+    /**
+     * Writes the separator and indentation before an array element.
+     *
+     * @param first     True if this is the first element of the array.
+     * @param newIndent The indentation of elements in the array.
+     */
+    void writeElementStart(boolean first, int indentFactor, int newIndent) throws IOException {
+        if (!first) {
+            write(',');
+        }
+        if (indentFactor > 0) {
+            write('\n');
+        }
+        writeSpaces(newIndent);
+    }
+
+    /**
+     * Writes the indentation and closing bracket after the last array element.
+     */
+    void writeArrayEnd(int indentFactor, int indent) throws IOException {
+        if (indentFactor > 0) {
+            write('\n');
+        }
+        writeSpaces(indent);
+        write(']');
+    }
+
+    /**
+     * Writes a single json value on one line.
+     *
+     * @param value The value to write: null, or a Map, Iterable, array, Number, Boolean or String.
+     * @throws JsonException If value is of an unknown type, or a Map or Iterable value produces a value of an unknown
+     *                       type.
+     * @throws IOException   If the target throws an IOException.
+     */
+    public void writeValue(Object value) throws JsonException, IOException {
+        writeValue(value, 0, 0);
+    }
+
+    /**
+     * Writes a json value. Please note that this assumes that no data structures are cyclical, and that all iterables
+     * are finite.
+     *
+     * @param value The value to format. All Iterables and Object, int, long, double and boolean arrays will be
+     *              formatted as json arrays, all Maps will be formatted as json maps.
+     * @throws JsonException If value is of an unknown type, or a Map or Iterable value produces a value of an unknown
+     *                       type.
+     * @throws IOException   If the target throws an IOException.
+     * @see JsonSerialization#writeJsonValue(java.io.Writer, Object, int, int)
+     */
+    public void writeValue(Object value, int indentFactor, int indent) throws JsonException, IOException {
+        if (value == null) {
+            writeRaw("null");
+        } else {
+            JsonValueWriter.forClass(value.getClass()).write(this, value, indentFactor, indent);
+        }
+    }
+}
@@ -24,55 +24,391 @@
  */
 package net.daboross.jsonserialization;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.Reader;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Class allowing for parsing JSON values from a Reader or String.
+ * Class allowing for parsing JSON values from a Reader, String, character array, or UTF-8 bytes or file.
  *
  * @author daboross@daboross.net (David Ross)
  */
 public class JsonParser {
 
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MAPPED_WINDOW_SIZE = 1 << 30;
+    /**
+     * Values of hex digit characters, indexed by character, or -1 for characters which are not hex digits.
+     */
+    private static final byte[] HEX_DIGIT_VALUES = new byte['f' + 1];
+    private static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+    private static final int MAX_EXACT_POWER_OF_TEN = 22;
+    private static final int INT_NUMBER = 0;
+    private static final int LONG_NUMBER = 1;
+    private static final int DOUBLE_NUMBER = 2;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    static {
+        Arrays.fill(HEX_DIGIT_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_DIGIT_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_DIGIT_VALUES['a' + i] = (byte) (10 + i);
+            HEX_DIGIT_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
     private final Reader reader;
+    /**
+     * Window of characters read from the reader. The character before {@link #position} is always kept in the window,
+     * even across refills, so that {@link #back()} never needs to touch the reader.
+     */
+    private final char[] buffer;
+    private int position;
+    private int limit;
     private long characterNumber;
     private long index;
     private long lineNumber;
     private char previous;
     private boolean usePrevious;
     private boolean reachedEof;
+    /**
+     * Reusable buffer for the characters of the value currently being parsed.
+     */
+    private char[] scratch;
+    private int scratchLength;
+    /**
+     * The value of the last number scanned, if it was an integer.
+     */
+    private long numberValue;
+    /**
+     * The value of the last number scanned, if it was not an integer.
+     */
+    private double numberDoubleValue;
+    private JsonKeyCache keyCache;
+    private boolean compactNumericArrays;
+    private boolean compactObjects;
+    /**
+     * True if a newline between the tokens of a value is a syntax error, as it is in JSON Lines.
+     */
+    private boolean singleLine;
+    /**
+     * Root of the shapes shared by parsed objects, or null if shapes are not shared.
+     */
+    private JsonShape shapes;
 
     /**
-     * Creates a new JsonParser which will read from the given Reader. The reader will not be buffered in JsonParser, so
-     * you may want to use a BufferedReader.
+     * Creates a new JsonParser which will read from the given Reader. JsonParser reads from the reader in blocks into
+     * its own buffer, so there is no need to wrap the reader in a BufferedReader. Because of this, characters after
+     * the end of the parsed value may be consumed from the reader.
      *
      * @param reader The reader to use
      */
     public JsonParser(Reader reader) {
+        this(reader, new char[DEFAULT_BUFFER_SIZE], 0, 0);
+    }
+
+    /**
+     * Creates a new JsonParser which will read from the given String. The characters of the string are copied into the
+     * parser in blocks, without going through a Reader.
+     *
+     * @param input The string to read from.
+     */
+    public JsonParser(String input) {
+        this((CharSequence) input);
+    }
+
+    /**
+     * Creates a new JsonParser which will read from the given CharSequence. The characters of the sequence are copied
+     * into the parser in blocks, without going through a Reader. The sequence must not be modified while parsing.
+     *
+     * @param input The character sequence to read from.
+     */
+    public JsonParser(CharSequence input) {
+        this(new CharSequenceReader(input), new char[bufferSizeFor(input.length())], 0, 0);
+    }
+
+    /**
+     * Creates a new JsonParser which will read directly from the given character array. The array is not copied, and
+     * must not be modified while parsing.
+     *
+     * @param input The characters to read from.
+     */
+    public JsonParser(char[] input) {
+        this(input, 0, input.length);
+    }
+
+    /**
+     * Creates a new JsonParser which will read directly from a range of the given character array. The array is not
+     * copied, and must not be modified while parsing. Positions in error messages are relative to the start of the
+     * range.
+     *
+     * @param input  The characters to read from.
+     * @param offset The index of the first character to read.
+     * @param length The number of characters to read.
+     * @throws IndexOutOfBoundsException If offset and length do not describe a range inside the array.
+     */
+    public JsonParser(char[] input, int offset, int length) {
+        this(null, input, offset, offset + length);
+        if (offset < 0 || length < 0 || offset > input.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset " + offset + ", length " + length
+                    + ", array length " + input.length);
+        }
+    }
+
+    /**
+     * Creates a new JsonParser which will read UTF-8 encoded JSON from the given byte array. The bytes are decoded in
+     * blocks straight into the parser's buffer. A leading byte order mark is skipped.
+     *
+     * @param input The UTF-8 bytes to read from.
+     */
+    public JsonParser(byte[] input) {
+        this(input, 0, input.length);
+    }
+
+    /**
+     * Creates a new JsonParser which will read UTF-8 encoded JSON from a range of the given byte array. The bytes are
+     * decoded in blocks straight into the parser's buffer. A leading byte order mark is skipped.
+     *
+     * @param input  The UTF-8 bytes to read from.
+     * @param offset The index of the first byte to read.
+     * @param length The number of bytes to read.
+     * @throws IndexOutOfBoundsException If offset and length do not describe a range inside the array.
+     */
+    public JsonParser(byte[] input, int offset, int length) {
+        this(new Utf8Reader(input, offset, length), new char[bufferSizeFor(length)], 0, 0);
+    }
+
+    /**
+     * Creates a new JsonParser which will read UTF-8 encoded JSON from the remaining bytes of the given buffer. The
+     * position of the buffer is not changed, and its contents must not be modified while parsing. A leading byte order
+     * mark is skipped.
+     *
+     * @param input The buffer to read from.
+     */
+    public JsonParser(ByteBuffer input) {
+        this(new Utf8Reader(input), new char[bufferSizeFor(input.remaining())], 0, 0);
+    }
+
+    /**
+     * Creates a new JsonParser which will read from the given Utf8Reader, with a buffer sized for an input of the given
+     * length.
+     *
+     * @param reader      The reader to read from.
+     * @param inputLength The number of bytes the reader will read.
+     */
+    JsonParser(Utf8Reader reader, long inputLength) {
+        this(reader, new char[bufferSizeFor((int) Math.min(inputLength, DEFAULT_BUFFER_SIZE))], 0, 0);
+    }
+
+    /**
+     * Creates a new JsonParser which will read UTF-8 encoded JSON from the given stream. The stream is read in blocks,
+     * so there is no need to wrap it in a BufferedInputStream, and bytes after the end of the parsed value may be
+     * consumed from it. A leading byte order mark is skipped.
+     *
+     * @param input The stream to read from.
+     */
+    public JsonParser(InputStream input) {
+        this(new Utf8Reader(input));
+    }
+
+    /**
+     * Creates a new JsonParser which will read UTF-8 encoded JSON from the given file. The file is memory mapped rather
+     * than read through the heap, in windows of up to 1 GiB so that files larger than 2 GiB can be parsed. The file is
+     * closed before this constructor returns, and must not be modified while parsing.
+     *
+     * @param file The file to read from.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public JsonParser(File file) throws IOException {
+        this(new Utf8Reader(mapFile(file, MAPPED_WINDOW_SIZE)));
+    }
+
+    /**
+     * Creates a new JsonParser with the given initial buffer contents.
+     *
+     * @param reader   The reader to refill the buffer from, or null if the buffer holds the entire input.
+     * @param buffer   The buffer.
+     * @param position The index of the first character to read in the buffer.
+     * @param limit    The index after the last character available in the buffer.
+     */
+    private JsonParser(Reader reader, char[] buffer, int position, int limit) {
         this.reader = reader;
+        this.buffer = buffer;
+        this.position = position;
+        this.limit = limit;
         this.usePrevious = false;
         this.previous = 0;
         this.index = 0;
         this.characterNumber = 1;
         this.lineNumber = 1;
         this.reachedEof = false;
+        this.scratch = new char[32];
+        this.scratchLength = 0;
+        this.keyCache = null;
+        this.compactNumericArrays = false;
+        this.compactObjects = false;
+        this.singleLine = false;
+        this.shapes = null;
     }
 
     /**
-     * Creates a new JsonParser which will read from the given String. It is recommended to instead use
-     * JsonParser(Reader) if you are reading from a File or other source besides a hardcoded String literal.
-     * <p>
-     * This will simply call JsonParser(Reader) with a new {@link java.io.StringReader} reading from the given string.
+     * Sets the cache used to canonicalize object keys. When parsing many objects with the same keys, a cache lets all
+     * of them share one String instance per key. A single cache may be shared between many parsers, including parsers
+     * on different threads.
      *
-     * @param input The string to read from.
+     * @param keyCache The cache to use, or null to create a new String for every key. Null is the default.
      */
-    public JsonParser(String input) {
-        this(new StringReader(input));
+    public void setKeyCache(JsonKeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * Gets the cache used to canonicalize object keys.
+     *
+     * @return The cache set with {@link #setKeyCache(JsonKeyCache)}, or null if there is none.
+     */
+    public JsonKeyCache getKeyCache() {
+        return this.keyCache;
+    }
+
+    /**
+     * Sets whether arrays holding only numbers are parsed into a {@link JsonNumberList}, which stores them in a
+     * primitive array instead of boxing each one. The list holds the same values as the ArrayList which would
+     * otherwise be returned, but cannot be modified. Arrays holding anything other than numbers, or both integers and
+     * decimals, are parsed into an ArrayList as usual.
+     *
+     * @param compactNumericArrays True to parse numeric arrays into JsonNumberLists. False is the default.
+     */
+    public void setCompactNumericArrays(boolean compactNumericArrays) {
+        this.compactNumericArrays = compactNumericArrays;
+    }
+
+    /**
+     * Gets whether arrays holding only numbers are parsed into a {@link JsonNumberList}.
+     *
+     * @return The value set with {@link #setCompactNumericArrays(boolean)}.
+     */
+    public boolean isCompactNumericArrays() {
+        return this.compactNumericArrays;
+    }
+
+    /**
+     * Sets whether json objects are parsed into a {@link JsonCompactMap} instead of a LinkedHashMap. A JsonCompactMap
+     * keeps the same order and holds the same entries, but stores them in flat arrays, which takes much less memory
+     * for the small objects most documents are made of.
+     *
+     * @param compactObjects True to parse objects into JsonCompactMaps. False is the default.
+     */
+    public void setCompactObjects(boolean compactObjects) {
+        this.compactObjects = compactObjects;
+    }
+
+    /**
+     * Gets whether json objects are parsed into a {@link JsonCompactMap}.
+     *
+     * @return The value set with {@link #setCompactObjects(boolean)}.
+     */
+    public boolean isCompactObjects() {
+        return this.compactObjects;
+    }
+
+    /**
+     * Sets whether json objects with the same keys in the same order share one key array. When enabled, objects are
+     * parsed into {@link JsonCompactMap}s, and every map with the same key sequence as one parsed earlier by this
+     * parser shares its keys and their hash index, holding only its own array of values. This suits arrays of many
+     * records with the same fields.
+     *
+     * @param shareObjectShapes True to share key arrays between objects. False is the default.
+     */
+    public void setShareObjectShapes(boolean shareObjectShapes) {
+        if (!shareObjectShapes) {
+            this.shapes = null;
+        } else if (this.shapes == null) {
+            this.shapes = new JsonShape();
+        }
+    }
+
+    /**
+     * Gets whether json objects with the same keys in the same order share one key array.
+     *
+     * @return The value set with {@link #setShareObjectShapes(boolean)}.
+     */
+    public boolean isShareObjectShapes() {
+        return this.shapes != null;
+    }
+
+    /**
+     * Gets the root of the shapes shared by parsed objects.
+     *
+     * @return The root shape, or null if shapes are not shared.
+     */
+    JsonShape getShapes() {
+        return this.shapes;
+    }
+
+    /**
+     * Sets the root of the shapes shared by parsed objects, so that objects from several parsers share key arrays.
+     *
+     * @param shapes The root shape, or null to stop sharing shapes.
+     */
+    void setShapes(JsonShape shapes) {
+        this.shapes = shapes;
+    }
+
+    /**
+     * Sets whether values must be written on a single line, as in JSON Lines. When set, a newline between the tokens
+     * of a value is a syntax error instead of whitespace.
+     *
+     * @param singleLine True to reject values spanning lines.
+     */
+    void setSingleLine(boolean singleLine) {
+        this.singleLine = singleLine;
+    }
+
+    /**
+     * Gets the size of buffer to use for an in-memory input, which never needs to be larger than the input itself.
+     *
+     * @param inputLength The length of the input.
+     * @return The buffer size.
+     */
+    private static int bufferSizeFor(int inputLength) {
+        return Math.max(2, Math.min(inputLength + 1, DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Maps the given file into memory as a series of read-only buffers.
+     *
+     * @param file       The file to map.
+     * @param windowSize The maximum size of each buffer.
+     * @return The mapped buffers, in order.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    static ByteBuffer[] mapFile(File file, int windowSize) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            ByteBuffer[] windows = new ByteBuffer[(int) Math.max(1, (size + windowSize - 1) / windowSize)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i * windowSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+            }
+            return windows;
+        } finally {
+            randomAccessFile.close();
+        }
     }
 
     /**
@@ -81,10 +417,11 @@ public class JsonParser {
      *
      * @throws IllegalStateException if .back() has already been used since .next() was last used
      */
-    private void back() {
+    void back() {
         if (this.usePrevious || this.index <= 0) {
             throw new IllegalStateException("Stepping back two steps is not supported");
         }
+        this.position -= 1;
         this.index -= 1;
         this.characterNumber -= 1;
         this.usePrevious = true;
@@ -92,29 +429,64 @@ public class JsonParser {
     }
 
     /**
-     * Get the next character in the source string.
+     * Moves directly to the given position in the buffer, for callers which already know where the next token starts.
+     * This is only meaningful when parsing directly from an array. The index, character and line counters are not
+     * updated, so positions in later error messages are wrong.
      *
-     * @return The next character, or -1 if past the end of the source string.
-     * @throws JsonException if end of file is reached.
+     * @param position The position in the array to read from next.
      */
-    public int nextAllowingEof() throws JsonException, IOException {
-        if (reachedEof) {
-            return -1;
-        }
-        char c;
-        if (this.usePrevious) {
-            this.usePrevious = false;
-            c = this.previous;
-        } else {
-            int i = this.reader.read();
+    void seek(int position) {
+        this.position = position;
+        this.usePrevious = false;
+        this.reachedEof = false;
+    }
 
-            if (i < 0) { // End of stream
-                this.reachedEof = true;
-                return -1;
-            } else {
-                c = (char) i;
-            }
+    /**
+     * Gets the position in the buffer of the next character to be read. When parsing directly from an array, this is
+     * an index into that array.
+     *
+     * @return The position of the next character.
+     */
+    int getBufferPosition() {
+        return this.position;
+    }
+
+    /**
+     * Refills the buffer from the reader, keeping the last character read at the start of the buffer. When parsing
+     * directly from an array there is no reader, and the buffer is never modified.
+     *
+     * @return True if at least one new character is available, false if the end of the reader has been reached.
+     * @throws IOException If the underlying reader throws an IOException.
+     */
+    private boolean fill() throws IOException {
+        if (this.reachedEof || this.reader == null) {
+            this.reachedEof = true;
+            return false;
+        }
+        if (this.limit > 0) {
+            this.buffer[0] = this.buffer[this.limit - 1];
+            this.position = 1;
+            this.limit = 1;
         }
+        int read;
+        do {
+            read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        } while (read == 0);
+        if (read < 0) {
+            this.reachedEof = true;
+            return false;
+        }
+        this.limit += read;
+        return true;
+    }
+
+    /**
+     * Updates the position counters for a character which has just been taken from the buffer.
+     *
+     * @param c The character taken.
+     */
+    private void advance(char c) {
+        this.usePrevious = false;
         this.index += 1;
         if (this.previous == '\r') {
             this.lineNumber += 1;
@@ -126,16 +498,37 @@ public class JsonParser {
             this.characterNumber += 1;
         }
         this.previous = c;
+    }
+
+    /**
+     * Get the next character in the source string.
+     *
+     * @return The next character, or -1 if past the end of the source string.
+     * @throws IOException If the underlying reader throws an IOException.
+     */
+    public int nextAllowingEof() throws JsonException, IOException {
+        if (this.position >= this.limit && !fill()) {
+            return -1;
+        }
+        char c = this.buffer[this.position++];
+        advance(c);
         return c;
     }
 
+    /**
+     * Get the next character in the source string.
+     *
+     * @return The next character.
+     * @throws JsonException If end of file is reached.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
     public char next() throws JsonException, IOException {
-        int c = nextAllowingEof();
-        if (c < 0) {
+        if (this.position >= this.limit && !fill()) {
             throw syntaxError("Unexpected end of file");
-        } else {
-            return (char) c;
         }
+        char c = this.buffer[this.position++];
+        advance(c);
+        return c;
     }
 
     /**
@@ -166,15 +559,27 @@ public class JsonParser {
      */
     public char nextClean() throws IOException, JsonException {
         while (true) {
-            char c = this.next();
-            if (c > ' ') {
-                return c;
+            while (this.position < this.limit) {
+                char c = this.buffer[this.position++];
+                advance(c);
+                if (c > ' ') {
+                    return c;
+                }
+                if (c == '\n' && this.singleLine) {
+                    throw syntaxError("Unexpected newline: expected value to end on the line it starts on");
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unexpected end of file");
             }
         }
     }
 
     /**
      * Return the characters up to the next `"` (double quote) character. Backslash processing is performed.
+     * <p>
+     * Runs of characters without escapes are found by scanning the buffer directly, and are copied in bulk. If the
+     * whole string is in the buffer and has no escapes, the String is created straight from the buffer.
      *
      * @return A String literal.
      * @throws JsonException if a newline or end of file is reached before the end quote is found, or if an unknown
@@ -182,53 +587,231 @@ public class JsonParser {
      * @throws IOException   If the underlying reader throws an IOException.
      */
     public String nextString() throws JsonException, IOException {
+        return nextString(null);
+    }
+
+    /**
+     * Reads a string, as {@link #nextString()} does, optionally canonicalizing it with a key cache.
+     *
+     * @param cache The cache to get the String from, or null to always create a new String.
+     * @return A String literal.
+     * @throws JsonException if a newline or end of file is reached before the end quote is found, or if an unknown
+     *                       escape pattern is found.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private String nextString(JsonKeyCache cache) throws JsonException, IOException {
         if (nextClean() != '\"') {
             back();
             throw syntaxError("Invalid string: expected `\"`, found `" + previous + "`");
         }
-        char c;
-        StringBuilder sb = new StringBuilder();
+        int start = this.position;
+        int end = scanStringRun(start);
+        if (end < this.limit && this.buffer[end] == '\"') {
+            String result = cache == null ? new String(this.buffer, start, end - start)
+                    : cache.get(this.buffer, start, end - start);
+            skipStringRun(end);
+            next();
+            return result;
+        }
+        this.scratchLength = 0;
         while (true) {
-            c = this.next();
+            end = scanStringRun(this.position);
+            int length = end - this.position;
+            if (length > 0) {
+                if (this.scratchLength + length > this.scratch.length) {
+                    this.scratch = Arrays.copyOf(this.scratch, Math.max(this.scratch.length * 2,
+                            this.scratchLength + length));
+                }
+                System.arraycopy(this.buffer, this.position, this.scratch, this.scratchLength, length);
+                this.scratchLength += length;
+                skipStringRun(end);
+            }
+            char c = this.next();
             switch (c) {
                 case '\n':
                 case '\r':
                     throw this.syntaxError("Unterminated string: Expected end of string (\"), found newline");
                 case '\\':
-                    c = this.next();
-                    switch (c) {
-                        case 'b':
-                            sb.append('\b');
-                            break;
-                        case 't':
-                            sb.append('\t');
-                            break;
-                        case 'n':
-                            sb.append('\n');
-                            break;
-                        case 'f':
-                            sb.append('\f');
-                            break;
-                        case 'r':
-                            sb.append('\r');
-                            break;
-                        case 'u':
-                            sb.append((char) Integer.parseInt(this.next(4), 16));
-                            break;
-                        case '\"':
-                        case '\'':
-                        case '\\':
-                        case '/':
-                            sb.append(c);
-                            break;
-                        default:
-                            throw this.syntaxError("Illegal escape: Expected \\b, \\t, \\n, \\f, \\r, \\u, \\\", \\', \\\\ or \\/, found `" + c + "`");
-                    }
+                    nextEscape();
                     break;
                 case '\"':
-                    return sb.toString();
+                    return cache == null ? new String(this.scratch, 0, this.scratchLength)
+                            : cache.get(this.scratch, 0, this.scratchLength);
+                default:
+                    // only reached if the run stopped at the end of the buffer, and next() refilled it
+                    appendScratch(c);
+            }
+        }
+    }
+
+    /**
+     * Finds the end of a run of string characters which need no special processing.
+     *
+     * @param start The index in the buffer to start from.
+     * @return The index in the buffer of the first `"`, `\`, newline or carriage return, or the buffer limit.
+     */
+    private int scanStringRun(int start) {
+        final char[] buffer = this.buffer;
+        final int limit = this.limit;
+        int i = start;
+        while (i < limit) {
+            char c = buffer[i];
+            if (c == '\"' || c == '\\' || c == '\n' || c == '\r') {
+                break;
+            }
+            i += 1;
+        }
+        return i;
+    }
+
+    /**
+     * Moves the position to the end of a run found with {@link #scanStringRun(int)}, updating the position counters.
+     * Runs never contain line breaks, and never follow a carriage return, so only the character number changes.
+     *
+     * @param end The index in the buffer of the end of the run.
+     */
+    private void skipStringRun(int end) {
+        int length = end - this.position;
+        if (length > 0) {
+            this.index += length;
+            this.characterNumber += length;
+            this.previous = this.buffer[end - 1];
+            this.usePrevious = false;
+            this.position = end;
+        }
+    }
+
+    /**
+     * Reads the rest of an escape sequence, after the backslash, and appends the escaped characters to the scratch
+     * buffer.
+     *
+     * @throws JsonException If end of file is reached, or if the escape sequence is invalid.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private void nextEscape() throws IOException, JsonException {
+        char c = this.next();
+        switch (c) {
+            case 'b':
+                appendScratch('\b');
+                break;
+            case 't':
+                appendScratch('\t');
+                break;
+            case 'n':
+                appendScratch('\n');
+                break;
+            case 'f':
+                appendScratch('\f');
+                break;
+            case 'r':
+                appendScratch('\r');
+                break;
+            case 'u':
+                // Each escape is one UTF-16 code unit, so an escaped surrogate pair becomes one code point in the
+                // String, and a lone surrogate is kept as is, as RFC 8259 allows.
+                appendScratch(nextHexEscape());
+                break;
+            case '\"':
+            case '\'':
+            case '\\':
+            case '/':
+                appendScratch(c);
+                break;
+            default:
+                throw this.syntaxError("Illegal escape: Expected \\b, \\t, \\n, \\f, \\r, \\u, \\\", \\', \\\\ or \\/, found `" + c + "`");
+        }
+    }
+
+    /**
+     * Reads the four hex digits of a unicode escape, decoding them with a lookup table.
+     *
+     * @return The escaped character.
+     * @throws JsonException If end of file is reached, or any of the characters are not hex digits.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private char nextHexEscape() throws IOException, JsonException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = this.next();
+            int digit = c < HEX_DIGIT_VALUES.length ? HEX_DIGIT_VALUES[c] : -1;
+            if (digit < 0) {
+                throw this.syntaxError("Illegal escape: Expected 4 hex digits after \\u, found `" + c + "`");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Reads an object key. Quoted keys are read through the key cache, if there is one. Unquoted numbers and literals
+     * are accepted as keys, and converted to Strings.
+     *
+     * @return The key.
+     * @throws JsonException If the next item is an object or array, or is not a valid item.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    String nextKey() throws IOException, JsonException {
+        char c = nextClean();
+        back();
+        switch (c) {
+            case '"':
+                return nextString(this.keyCache);
+            case '{':
+            case '[':
+                throw syntaxError("Expected key, found `" + c + "`");
+            default:
+                return String.valueOf(nextRawString());
+        }
+    }
+
+    /**
+     * Skips the rest of an object or array whose opening bracket has already been read, without creating any values.
+     * Strings are followed so that brackets inside them are ignored, but the skipped content is otherwise not checked.
+     *
+     * @throws JsonException If end of file is reached before the object or array ends, or a string contains a newline.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    void skipContainer() throws IOException, JsonException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (nextClean()) {
+                case '{':
+                case '[':
+                    depth += 1;
+                    break;
+                case '}':
+                case ']':
+                    depth -= 1;
+                    break;
+                case '"':
+                    skipStringContents();
+                    break;
                 default:
-                    sb.append(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a string whose opening quote has already been read, without decoding it.
+     *
+     * @throws JsonException If end of file or a newline is reached before the end of the string.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private void skipStringContents() throws IOException, JsonException {
+        while (true) {
+            skipStringRun(scanStringRun(this.position));
+            switch (this.next()) {
+                case '\n':
+                case '\r':
+                    throw this.syntaxError("Unterminated string: Expected end of string (\"), found newline");
+                case '\\':
+                    this.next();
+                    break;
+                case '"':
+                    return;
+                default:
+                    break;
             }
         }
     }
@@ -264,49 +847,253 @@ public class JsonParser {
      *                       isn't "true", "false" or "null"
      */
     public Object nextRawString() throws IOException, JsonException {
-        // Accumulate characters until we reach the end of the text or a formatting character.
-
         // Strictly speaking, we want to be able to be able to parse *just* a raw string as a valid json value,
         // so we want to allow reachign EOF if the full string is valid as a raw string. Users should be able
         // to use nextItem() on anything, even if the outer most construct is a raw value not an object or array.
+        int c = nextAllowingEof();
+        while (c == ' ') {
+            c = nextAllowingEof();
+        }
+        if (c < 0) {
+            throw this.syntaxError("Unexpected end of file");
+        }
+        if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') {
+            return nextNumber((char) c);
+        }
+        this.scratchLength = 0;
+        switch (c) {
+            case 't':
+            case 'T':
+                return nextLiteral(c, "true", Boolean.TRUE);
+            case 'f':
+            case 'F':
+                return nextLiteral(c, "false", Boolean.FALSE);
+            case 'n':
+            case 'N':
+                return nextLiteral(c, "null", null);
+            default:
+                if (isRawTerminator(c)) {
+                    back();
+                    throw this.syntaxError("Missing value: Expected item, found `" + previous + "`");
+                }
+                throw invalidRawValue(c);
+        }
+    }
 
-        StringBuilder builder = new StringBuilder();
-        for (int c = nextAllowingEof(); c >= ' ' && "[]{},:=#".indexOf(c) < 0; c = nextAllowingEof()) {
-            builder.append((char) c);
+    /**
+     * Matches the rest of a literal against the input, ignoring case, without building a String from it.
+     *
+     * @param first   The first character of the literal, which has already been read.
+     * @param literal The expected literal, in lower case.
+     * @param value   The value to return if the literal matches.
+     * @return The given value.
+     * @throws JsonException If the characters up to the next deliminator are not the literal.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private Object nextLiteral(int first, String literal, Object value) throws IOException, JsonException {
+        int c = first;
+        for (int i = 0; i < literal.length(); i++) {
+            if ((c | 0x20) != literal.charAt(i)) {
+                throw invalidRawValue(c);
+            }
+            appendScratch((char) c);
+            c = nextAllowingEof();
         }
-        this.back();
+        for (; c == ' '; c = nextAllowingEof()) {
+            appendScratch(' ');
+        }
+        if (!isRawTerminator(c)) {
+            throw invalidRawValue(c);
+        }
+        backUnlessEof(c);
+        return value;
+    }
+
+    /**
+     * Parses a number, boxing it as an Integer, Long or Double.
+     *
+     * @param first The first character of the number, which has already been read.
+     * @return An Integer, Long or Double.
+     * @throws JsonException If the characters up to the next deliminator do not form a number.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private Object nextNumber(char first) throws IOException, JsonException {
+        switch (scanNumber(first)) {
+            case INT_NUMBER:
+                return Integer.valueOf((int) this.numberValue);
+            case LONG_NUMBER:
+                return Long.valueOf(this.numberValue);
+            default:
+                return Double.valueOf(this.numberDoubleValue);
+        }
+    }
 
-        String result = builder.toString();
-        if (result.isEmpty()) {
-            if (reachedEof) {
-                throw this.syntaxError("Unexpected end of file");
+    /**
+     * Parses a number in a single pass. Digits are accumulated into a long as they are read (negatively, so that
+     * Long.MIN_VALUE fits), which gives Integer and Long values directly. Decimal values whose digits fit in 53 bits
+     * and whose exponent is small are converted with a single exact multiplication or division, which is correctly
+     * rounded. Anything else falls back to Double.valueOf() on the characters read.
+     *
+     * @param first The first character of the number, which has already been read.
+     * @return INT_NUMBER or LONG_NUMBER if the value was stored in numberValue, DOUBLE_NUMBER if it was stored in
+     * numberDoubleValue.
+     * @throws JsonException If the characters up to the next deliminator do not form a number.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private int scanNumber(char first) throws IOException, JsonException {
+        this.scratchLength = 0;
+        boolean negative = first == '-';
+        int c = first;
+        if (c == '-' || c == '+') {
+            appendScratch(first);
+            c = nextAllowingEof();
+        }
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long accumulated = 0;
+        boolean overflow = false;
+        boolean integer = true;
+        int digits = 0;
+        int exponent = 0;
+        for (; c >= '0' && c <= '9'; c = nextAllowingEof()) {
+            appendScratch((char) c);
+            digits += 1;
+            int digit = c - '0';
+            if (accumulated < multiplyLimit || accumulated * 10 < limit + digit) {
+                overflow = true;
             } else {
-                throw this.syntaxError("Missing value: Expected item, found `" + previous + "`");
+                accumulated = accumulated * 10 - digit;
             }
         }
-        if (result.trim().equalsIgnoreCase("true")) {
-            return Boolean.TRUE;
+        if (c == '.') {
+            integer = false;
+            appendScratch('.');
+            for (c = nextAllowingEof(); c >= '0' && c <= '9'; c = nextAllowingEof()) {
+                appendScratch((char) c);
+                digits += 1;
+                int digit = c - '0';
+                if (accumulated < multiplyLimit || accumulated * 10 < limit + digit) {
+                    overflow = true;
+                } else {
+                    accumulated = accumulated * 10 - digit;
+                    exponent -= 1;
+                }
+            }
         }
-        if (result.trim().equalsIgnoreCase("false")) {
-            return Boolean.FALSE;
+        if (digits > 0 && (c == 'e' || c == 'E')) {
+            integer = false;
+            appendScratch((char) c);
+            c = nextAllowingEof();
+            boolean negativeExponent = c == '-';
+            if (c == '-' || c == '+') {
+                appendScratch((char) c);
+                c = nextAllowingEof();
+            }
+            int exponentDigits = 0;
+            int explicitExponent = 0;
+            for (; c >= '0' && c <= '9'; c = nextAllowingEof()) {
+                appendScratch((char) c);
+                exponentDigits += 1;
+                if (explicitExponent < 100000) {
+                    explicitExponent = explicitExponent * 10 + (c - '0');
+                }
+            }
+            if (exponentDigits == 0) {
+                digits = 0;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
         }
-        if (result.trim().equalsIgnoreCase("null")) {
-            return null;
+        final int numberLength = this.scratchLength;
+        for (; c == ' '; c = nextAllowingEof()) {
+            appendScratch(' ');
         }
+        if (digits == 0 || !isRawTerminator(c)) {
+            throw invalidRawValue(c);
+        }
+        backUnlessEof(c);
 
-        try {
-            return Integer.valueOf(result);
-        } catch (NumberFormatException ignored) {
+        if (!overflow) {
+            if (integer) {
+                long value = negative ? accumulated : -accumulated;
+                this.numberValue = value;
+                return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? INT_NUMBER : LONG_NUMBER;
+            }
+            if (-accumulated <= MAX_EXACT_DOUBLE_INTEGER && exponent >= -MAX_EXACT_POWER_OF_TEN
+                    && exponent <= MAX_EXACT_POWER_OF_TEN) {
+                double value = (double) -accumulated;
+                if (exponent < 0) {
+                    value /= POWERS_OF_TEN[-exponent];
+                } else {
+                    value *= POWERS_OF_TEN[exponent];
+                }
+                this.numberDoubleValue = negative ? -value : value;
+                return DOUBLE_NUMBER;
+            }
         }
-        try {
-            return Long.valueOf(result);
-        } catch (NumberFormatException ignored) {
+        this.numberDoubleValue = Double.parseDouble(new String(this.scratch, 0, numberLength));
+        return DOUBLE_NUMBER;
+    }
+
+    /**
+     * Reads the rest of an invalid raw value, up to the next deliminator, and creates an exception describing it.
+     *
+     * @param c The next character after those already in the scratch buffer, or -1 if at the end of file.
+     * @return A JsonException suitable for throwing.
+     * @throws IOException If the underlying reader throws an IOException.
+     */
+    private JsonException invalidRawValue(int c) throws IOException, JsonException {
+        for (; !isRawTerminator(c); c = nextAllowingEof()) {
+            appendScratch((char) c);
         }
-        try {
-            return Double.valueOf(result);
-        } catch (NumberFormatException ignored) {
+        backUnlessEof(c);
+        return this.syntaxError("Invalid item: expected true, false or number, found `"
+                + new String(this.scratch, 0, this.scratchLength) + "`");
+    }
+
+    /**
+     * Checks whether a character ends a raw (unquoted) value. Spaces do not end a raw value, so that two values with
+     * only a space between them are reported as one invalid value.
+     *
+     * @param c The character, or -1 for end of file.
+     * @return True if c is a control character, end of file or one of {@code []{},:=#}.
+     */
+    private static boolean isRawTerminator(int c) {
+        switch (c) {
+            case '[':
+            case ']':
+            case '{':
+            case '}':
+            case ',':
+            case ':':
+            case '=':
+            case '#':
+                return true;
+            default:
+                return c < ' ';
+        }
+    }
+
+    /**
+     * Steps back over the character just read, unless the end of file was reached instead.
+     *
+     * @param c The character just read, or -1 for end of file.
+     */
+    private void backUnlessEof(int c) {
+        if (c >= 0) {
+            back();
         }
-        throw this.syntaxError("Invalid item: expected true, false or number, found `" + result + "`");
+    }
+
+    /**
+     * Appends a character to the scratch buffer, growing it if needed.
+     *
+     * @param c The character.
+     */
+    private void appendScratch(char c) {
+        if (this.scratchLength == this.scratch.length) {
+            this.scratch = Arrays.copyOf(this.scratch, this.scratchLength * 2);
+        }
+        this.scratch[this.scratchLength++] = c;
     }
 
     /**
@@ -318,91 +1105,279 @@ public class JsonParser {
      *                       in the map or items in the map.
      * @throws IOException   If the underlying reader throws an IOException.
      */
+    @SuppressWarnings("unchecked")
     public Map<String, Object> parseJsonObject() throws JsonException, IOException {
-        Map<String, Object> map = new LinkedHashMap<String, Object>();
-        char c; // reused temporary variable
-        String key;
-
         if (nextClean() != '{') {
             back();
             throw syntaxError("Invalid json object: Expected `{`, found `" + previous + "`");
         }
-        while (true) {
-            c = nextClean();
-            switch (c) {
-                case '}':
-                    return map;
-                default:
-                    back();
-                    key = nextItem().toString();
+        JsonTreeBuilder builder = new JsonTreeBuilder(this);
+        parseObject(builder);
+        return (Map<String, Object>) builder.getResult();
+    }
+
+    /**
+     * Parses a json array from the reader. Note that this implementation *does* allow for trailing commas, though that
+     * is the only deviation it allows from the standard specification.
+     *
+     * @return A (new) List containing the keys and values from the json object
+     * @throws JsonException If end of file is reached before the array is terminated, or if there are any syntax errors
+     *                       in the array or items in the array.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> parseJsonArray() throws JsonException, IOException {
+        if (nextClean() != '[') {
+            back();
+            throw syntaxError("Invalid json array input: expected `[`, found `" + previous + "`");
+        }
+        JsonTreeBuilder builder = new JsonTreeBuilder(this);
+        parseArray(builder);
+        return (List<Object>) builder.getResult();
+    }
+
+    /**
+     * Parses a json array of integers straight into an int array, without boxing them.
+     *
+     * @return A new array holding the numbers from the json array.
+     * @throws JsonException If end of file is reached before the array is terminated, if there are any syntax errors in
+     *                       the array, or if any item is not an integer which fits in an int.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public int[] parseIntArray() throws JsonException, IOException {
+        startPrimitiveArray();
+        int[] values = new int[16];
+        int size = 0;
+        while (nextPrimitiveItem(size == 0)) {
+            if (scanPrimitiveItem() != INT_NUMBER) {
+                throw invalidPrimitiveItem("int");
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
             }
+            values[size++] = (int) this.numberValue;
+        }
+        return Arrays.copyOf(values, size);
+    }
 
-            // The key is followed by ':'.
-            c = nextClean();
-            if (c != ':') {
-                throw syntaxError("Expected `:` after key, found `" + c + "`");
+    /**
+     * Parses a json array of integers straight into a long array, without boxing them.
+     *
+     * @return A new array holding the numbers from the json array.
+     * @throws JsonException If end of file is reached before the array is terminated, if there are any syntax errors in
+     *                       the array, or if any item is not an integer which fits in a long.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public long[] parseLongArray() throws JsonException, IOException {
+        startPrimitiveArray();
+        long[] values = new long[16];
+        int size = 0;
+        while (nextPrimitiveItem(size == 0)) {
+            if (scanPrimitiveItem() == DOUBLE_NUMBER) {
+                throw invalidPrimitiveItem("long");
             }
-            if (map.put(key, nextItem()) != null) {
-                // if we already had this key
-                throw syntaxError("Expected unique key, found duplicate key \"" + key + "\"");
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
             }
+            values[size++] = this.numberValue;
+        }
+        return Arrays.copyOf(values, size);
+    }
 
-            // Pairs are separated by ','.
-            c = nextClean();
-            switch (c) {
+    /**
+     * Parses a json array of numbers straight into a double array, without boxing them. Integers are converted to the
+     * nearest double.
+     *
+     * @return A new array holding the numbers from the json array.
+     * @throws JsonException If end of file is reached before the array is terminated, if there are any syntax errors in
+     *                       the array, or if any item is not a number.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public double[] parseDoubleArray() throws JsonException, IOException {
+        startPrimitiveArray();
+        double[] values = new double[16];
+        int size = 0;
+        while (nextPrimitiveItem(size == 0)) {
+            double value = scanPrimitiveItem() == DOUBLE_NUMBER ? this.numberDoubleValue : (double) this.numberValue;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private void startPrimitiveArray() throws JsonException, IOException {
+        if (nextClean() != '[') {
+            back();
+            throw syntaxError("Invalid json array input: expected `[`, found `" + previous + "`");
+        }
+    }
+
+    /**
+     * Reads up to the next item of an array being parsed into a primitive array, accepting the same separators and
+     * trailing commas as {@link #parseJsonArray()}.
+     *
+     * @param first True if no items have been read yet.
+     * @return True if there is another item, false if the array has ended.
+     */
+    private boolean nextPrimitiveItem(boolean first) throws JsonException, IOException {
+        if (first) {
+            if (nextClean() == ']') {
+                return false;
+            }
+            back();
+        } else {
+            switch (nextClean()) {
                 case ',':
-                    if (nextClean() == '}') {
-                        return map;
+                    if (nextClean() == ']') {
+                        return false;
                     }
                     back();
                     break;
-                case '}':
-                    return map;
+                case ']':
+                    return false;
                 default:
-                    throw syntaxError("Expected `,` or `}`, found `" + c + '`');
+                    throw syntaxError("Expected a ',' or ']'");
             }
         }
+        if (nextClean() == ',') {
+            throw syntaxError("Invalid json array: expected item, found `,`");
+        }
+        back();
+        return true;
     }
 
     /**
-     * Parses a json array from the reader. Note that this implementation *does* allow for trailing commas, though that
-     * is the only deviation it allows from the standard specification.
+     * Scans an array item which must be a number.
      *
-     * @return A (new) List containing the keys and values from the json object
-     * @throws JsonException If end of file is reached before the array is terminated, or if there are any syntax errors
-     *                       in the array or items in the array.
+     * @return The kind of number scanned, as returned by {@link #scanNumber(char)}.
+     */
+    private int scanPrimitiveItem() throws JsonException, IOException {
+        char c = nextClean();
+        if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') {
+            return scanNumber(c);
+        }
+        back();
+        throw syntaxError("Invalid json array: expected number, found `" + c + "`");
+    }
+
+    private JsonException invalidPrimitiveItem(String type) {
+        return syntaxError("Invalid json array: expected " + type + ", found `"
+                + new String(this.scratch, 0, this.scratchLength).trim() + "`");
+    }
+
+    /**
+     * Parses a single item from the reader, passing each part of it to the given handler as it is read instead of
+     * building a Map or List. This allows filtering or aggregating documents too large to hold in memory.
+     * <p>
+     * {@link #nextItem()}, {@link #parseJsonObject()} and {@link #parseJsonArray()} are implemented with a handler
+     * which builds Maps and Lists, so the same input is accepted and the same errors are reported. Duplicate keys are
+     * not checked for, unless the handler does so.
+     *
+     * @param handler The handler to pass the item to.
+     * @throws JsonException If there is a syntax error in the item, end of file is reached before the item is
+     *                       terminated, or the handler throws a JsonException.
+     * @throws IOException   If the underlying reader or the handler throws an IOException.
+     */
+    public void parse(JsonHandler handler) throws JsonException, IOException {
+        switch (nextClean()) {
+            case '"':
+                back();
+                handler.stringValue(nextString());
+                break;
+            case '{':
+                parseObject(handler);
+                break;
+            case '[':
+                parseArray(handler);
+                break;
+            default:
+                back();
+                Object value = nextRawString();
+                if (value == null) {
+                    handler.nullValue();
+                } else if (value instanceof Boolean) {
+                    handler.booleanValue((Boolean) value);
+                } else {
+                    handler.numberValue((Number) value);
+                }
+        }
+    }
+
+    /**
+     * Parses the rest of a json object whose opening `{` has already been read.
+     *
+     * @param handler The handler to pass the object to.
+     * @throws JsonException If there is a syntax error, or end of file is reached before the object is terminated.
      * @throws IOException   If the underlying reader throws an IOException.
      */
-    public List<Object> parseJsonArray() throws JsonException, IOException {
-        List<Object> list = new ArrayList<Object>();
-        if (nextClean() != '[') {
+    private void parseObject(JsonHandler handler) throws JsonException, IOException {
+        char c; // reused temporary variable
+        handler.startObject();
+        if (nextClean() != '}') {
             back();
-            throw syntaxError("Invalid json array input: expected `[`, found `" + previous + "`");
+            while (true) {
+                handler.key(nextKey());
+
+                // The key is followed by ':'.
+                c = nextClean();
+                if (c != ':') {
+                    throw syntaxError("Expected `:` after key, found `" + c + "`");
+                }
+                parse(handler);
+
+                // Pairs are separated by ','.
+                c = nextClean();
+                if (c == ',') {
+                    if (nextClean() == '}') {
+                        break;
+                    }
+                    back();
+                } else if (c == '}') {
+                    break;
+                } else {
+                    throw syntaxError("Expected `,` or `}`, found `" + c + '`');
+                }
+            }
         }
+        handler.endObject();
+    }
+
+    /**
+     * Parses the rest of a json array whose opening `[` has already been read.
+     *
+     * @param handler The handler to pass the array to.
+     * @throws JsonException If there is a syntax error, or end of file is reached before the array is terminated.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    private void parseArray(JsonHandler handler) throws JsonException, IOException {
+        handler.startArray();
         if (nextClean() != ']') {
             back();
+            arrayLoop:
             while (true) {
                 if (nextClean() == ',') {
                     throw syntaxError("Invalid json array: expected item, found `,`");
                 } else {
                     back();
-                    list.add(nextItem());
+                    parse(handler);
                 }
                 switch (nextClean()) {
                     case ',':
                         if (nextClean() == ']') {
-                            return list;
+                            break arrayLoop;
                         }
                         back();
                         break;
                     case ']':
-                        return list;
+                        break arrayLoop;
                     default:
                         throw syntaxError("Expected a ',' or ']'");
                 }
             }
         }
-        return list;
+        handler.endArray();
     }
 
     /**
@@ -0,0 +1,279 @@
+/*
+ * JsonPullParser Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pull parser reading a json value one token at a time, using a {@link JsonParser} for the actual lexing. Unlike
+ * {@link JsonParser#nextItem()}, this never holds more than one value in memory, so arbitrarily large documents can be
+ * walked in constant memory.
+ * <p>
+ * Like {@link JsonParser#parseJsonObject()} and {@link JsonParser#parseJsonArray()}, trailing commas are allowed in
+ * objects and arrays. Duplicate keys are not checked for.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonPullParser {
+
+    private static final byte IN_OBJECT = 0;
+    private static final byte IN_ARRAY = 1;
+    /**
+     * The current object or array has just been opened.
+     */
+    private static final int STATE_START = 0;
+    /**
+     * A key has been read in the current object, and its value has not.
+     */
+    private static final int STATE_AFTER_KEY = 1;
+    /**
+     * A value has been read in the current object or array.
+     */
+    private static final int STATE_AFTER_VALUE = 2;
+    private final JsonParser parser;
+    private byte[] containers;
+    private int depth;
+    private int state;
+    private boolean finished;
+    private JsonToken currentToken;
+    private String currentName;
+    private Object currentValue;
+
+    /**
+     * Creates a new JsonPullParser reading a single json value from the given parser.
+     *
+     * @param parser The parser to read from.
+     */
+    public JsonPullParser(JsonParser parser) {
+        this.parser = parser;
+        this.containers = new byte[16];
+        this.depth = 0;
+        this.state = STATE_START;
+        this.finished = false;
+        this.currentToken = null;
+        this.currentName = null;
+        this.currentValue = null;
+    }
+
+    /**
+     * Reads the next token.
+     *
+     * @return The next token, or null if the whole value has been read.
+     * @throws JsonException If there is a syntax error, or end of file is reached before the value is complete.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public JsonToken nextToken() throws IOException, JsonException {
+        this.currentValue = null;
+        if (this.depth == 0) {
+            if (this.finished) {
+                return this.currentToken = null;
+            }
+            return nextValue();
+        }
+        char c = this.parser.nextClean();
+        if (this.containers[this.depth - 1] == IN_ARRAY) {
+            if (this.state == STATE_AFTER_VALUE) {
+                if (c == ',') {
+                    c = this.parser.nextClean();
+                } else if (c != ']') {
+                    throw this.parser.syntaxError("Expected a ',' or ']'");
+                }
+            }
+            if (c == ']') {
+                return endContainer(JsonToken.END_ARRAY);
+            }
+            if (c == ',') {
+                throw this.parser.syntaxError("Invalid json array: expected item, found `,`");
+            }
+            this.parser.back();
+            this.state = STATE_AFTER_VALUE;
+            return nextValue();
+        }
+        if (this.state == STATE_AFTER_KEY) {
+            if (c != ':') {
+                throw this.parser.syntaxError("Expected `:` after key, found `" + c + "`");
+            }
+            this.state = STATE_AFTER_VALUE;
+            return nextValue();
+        }
+        if (this.state == STATE_AFTER_VALUE) {
+            if (c == ',') {
+                c = this.parser.nextClean();
+            } else if (c != '}') {
+                throw this.parser.syntaxError("Expected `,` or `}`, found `" + c + '`');
+            }
+        }
+        if (c == '}') {
+            return endContainer(JsonToken.END_OBJECT);
+        }
+        this.parser.back();
+        this.currentName = this.parser.nextKey();
+        this.state = STATE_AFTER_KEY;
+        return this.currentToken = JsonToken.FIELD_NAME;
+    }
+
+    private JsonToken nextValue() throws IOException, JsonException {
+        char c = this.parser.nextClean();
+        switch (c) {
+            case '{':
+                startContainer(IN_OBJECT);
+                return this.currentToken = JsonToken.START_OBJECT;
+            case '[':
+                startContainer(IN_ARRAY);
+                return this.currentToken = JsonToken.START_ARRAY;
+            case '"':
+                this.parser.back();
+                this.currentValue = this.parser.nextString();
+                this.currentToken = JsonToken.VALUE_STRING;
+                break;
+            default:
+                this.parser.back();
+                Object value = this.parser.nextRawString();
+                this.currentValue = value;
+                if (value == null) {
+                    this.currentToken = JsonToken.VALUE_NULL;
+                } else if (value instanceof Boolean) {
+                    this.currentToken = (Boolean) value ? JsonToken.VALUE_TRUE : JsonToken.VALUE_FALSE;
+                } else {
+                    this.currentToken = JsonToken.VALUE_NUMBER;
+                }
+        }
+        if (this.depth == 0) {
+            this.finished = true;
+        }
+        return this.currentToken;
+    }
+
+    private void startContainer(byte container) {
+        if (this.depth == this.containers.length) {
+            this.containers = Arrays.copyOf(this.containers, this.depth * 2);
+        }
+        this.containers[this.depth++] = container;
+        this.state = STATE_START;
+    }
+
+    private JsonToken endContainer(JsonToken token) {
+        this.depth -= 1;
+        this.state = STATE_AFTER_VALUE;
+        if (this.depth == 0) {
+            this.finished = true;
+        }
+        return this.currentToken = token;
+    }
+
+    /**
+     * Skips the children of the current object or array, so that the next token read is the one after the matching
+     * END_OBJECT or END_ARRAY. Skipped strings, numbers and literals are never created, and skipped content is only
+     * checked for balanced brackets and terminated strings. If the current token is not START_OBJECT or START_ARRAY,
+     * this does nothing.
+     *
+     * @throws JsonException If end of file is reached before the object or array ends.
+     * @throws IOException   If the underlying reader throws an IOException.
+     */
+    public void skipChildren() throws IOException, JsonException {
+        if (this.currentToken == JsonToken.START_OBJECT || this.currentToken == JsonToken.START_ARRAY) {
+            this.parser.skipContainer();
+            endContainer(this.currentToken == JsonToken.START_OBJECT ? JsonToken.END_OBJECT : JsonToken.END_ARRAY);
+        }
+    }
+
+    /**
+     * Gets the token last returned by {@link #nextToken()}.
+     *
+     * @return The current token, or null if no token has been read or the whole value has been read.
+     */
+    public JsonToken getCurrentToken() {
+        return this.currentToken;
+    }
+
+    /**
+     * Gets the most recently read key in an object. This is the key for the current token if the current token is a
+     * FIELD_NAME, or is a value or START_OBJECT/START_ARRAY directly inside an object.
+     *
+     * @return The most recently read key, or null if no key has been read.
+     */
+    public String getCurrentName() {
+        return this.currentName;
+    }
+
+    /**
+     * Gets the value of the current token.
+     *
+     * @return A String for VALUE_STRING, an Integer, Long or Double for VALUE_NUMBER, a Boolean for VALUE_TRUE and
+     * VALUE_FALSE, the key for FIELD_NAME, or null for any other token.
+     */
+    public Object getValue() {
+        return this.currentToken == JsonToken.FIELD_NAME ? this.currentName : this.currentValue;
+    }
+
+    /**
+     * Gets the value of the current VALUE_STRING or FIELD_NAME token.
+     *
+     * @return The string.
+     * @throws IllegalStateException If the current token is not VALUE_STRING or FIELD_NAME.
+     */
+    public String getString() {
+        if (this.currentToken != JsonToken.VALUE_STRING && this.currentToken != JsonToken.FIELD_NAME) {
+            throw new IllegalStateException("Expected VALUE_STRING or FIELD_NAME, found " + this.currentToken);
+        }
+        return (String) getValue();
+    }
+
+    /**
+     * Gets the value of the current VALUE_NUMBER token.
+     *
+     * @return An Integer, Long or Double.
+     * @throws IllegalStateException If the current token is not VALUE_NUMBER.
+     */
+    public Number getNumber() {
+        if (this.currentToken != JsonToken.VALUE_NUMBER) {
+            throw new IllegalStateException("Expected VALUE_NUMBER, found " + this.currentToken);
+        }
+        return (Number) this.currentValue;
+    }
+
+    /**
+     * Gets the number of objects and arrays which have been started and not yet ended.
+     *
+     * @return The current depth. This is 1 directly after the first START_OBJECT or START_ARRAY.
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Returns a string in the format of " at {index} [character {character number} line {line number}]"
+     *
+     * @return The position string of the underlying parser.
+     */
+    public String getPositionString() {
+        return this.parser.getPositionString();
+    }
+
+    @Override
+    public String toString() {
+        return "JsonPullParser" + getPositionString();
+    }
+}
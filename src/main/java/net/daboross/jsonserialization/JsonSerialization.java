@@ -25,17 +25,44 @@
 package net.daboross.jsonserialization;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.util.Iterator;
 import java.util.Map;
 
 /**
  * Class allowing for serializing Java Maps/Lists as json objects/arrays to a writer.
+ * <p>
+ * Each method writes through a {@link JsonCharOutput}, so output is passed to the writer in large chunks rather than
+ * one character at a time. The buffer is reused between calls on the same thread.
  *
  * @author daboross@daboross.net (David Ross)
  */
 public class JsonSerialization {
 
+    /**
+     * Buffer for the next call on each thread. Taken out while in use, so a nested call would use its own buffer.
+     */
+    private static final ThreadLocal<char[]> BUFFERS = new ThreadLocal<char[]>();
+    private static final ThreadLocal<byte[]> BYTE_BUFFERS = new ThreadLocal<byte[]>();
+
+    private static JsonCharOutput open(Writer writer) {
+        char[] buffer = BUFFERS.get();
+        if (buffer == null) {
+            buffer = new char[JsonOutput.DEFAULT_BUFFER_SIZE];
+        } else {
+            BUFFERS.set(null);
+        }
+        return new JsonCharOutput(writer, buffer);
+    }
+
+    /**
+     * Returns the buffer of the given output for the next call on this thread. Flushing is left to the success path,
+     * so that an IOException from the writer cannot hide a JsonException thrown while writing.
+     */
+    private static void release(JsonCharOutput output) {
+        BUFFERS.set(output.getBuffer());
+    }
+
     /**
      * Writes a number to the given writer in a format valid for json.
      *
@@ -45,10 +72,13 @@ public class JsonSerialization {
      * @throws IOException   If the writer throws an IOException.
      */
     public static void writeNumber(Writer writer, Number number) throws JsonException, IOException {
-        if (Double.isNaN(number.doubleValue()) || Double.isInfinite(number.doubleValue())) {
-            throw new JsonException("Expected finite number, found `" + number + "`");
+        JsonCharOutput output = open(writer);
+        try {
+            output.writeNumber(number);
+            output.flushBuffer();
+        } finally {
+            release(output);
         }
-        writer.write(number.toString());
     }
 
     /**
@@ -59,55 +89,12 @@ public class JsonSerialization {
      * @throws IOException If the writer throws an IOException.
      */
     public static void writeString(Writer writer, String string) throws IOException {
-        writer.write('\"');
-        char previousChar = 0;
-        for (char c : string.toCharArray()) {
-            switch (c) {
-                case '\\':
-                case '\"':
-                    writer.write('\\');
-                    writer.write(c);
-                    break;
-                case '/':
-                    if (previousChar == '<') {
-                        writer.write('\\');
-                    }
-                    writer.write(c);
-                    break;
-                case '\b':
-                    writer.write("\\b");
-                    break;
-                case '\t':
-                    writer.write("\\t");
-                    break;
-                case '\n':
-                    writer.write("\\n");
-                    break;
-                case '\f':
-                    writer.write("\\f");
-                    break;
-                case '\r':
-                    writer.write("\\r");
-                    break;
-                default:
-                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
-                            || (c >= '\u2000' && c < '\u2100')) {
-                        writer.write("\\u");
-                        String hexStringTemp = Integer.toHexString(c);
-                        writer.write("0000", 0, 4 - hexStringTemp.length());
-                        writer.write(hexStringTemp);
-                    } else {
-                        writer.write(c);
-                    }
-            }
-            previousChar = c;
-        }
-        writer.write('\"');
-    }
-
-    private static void writeIndent(Writer writer, int indentAmount) throws IOException {
-        for (int i = 0; i < indentAmount; i += 1) {
-            writer.write(' ');
+        JsonCharOutput output = open(writer);
+        try {
+            output.writeString(string);
+            output.flushBuffer();
+        } finally {
+            release(output);
         }
     }
 
@@ -123,44 +110,13 @@ public class JsonSerialization {
      * @throws IOException   If the writer throws an IOException.
      */
     public static Writer writeJsonObject(Writer writer, Map<?, ?> values, int indentFactor, int indent) throws JsonException, IOException {
-        boolean commanate = false;
-        final int length = values.size();
-        Iterator<? extends Map.Entry<?, ?>> entries = values.entrySet().iterator();
-        writer.write('{');
-
-        if (length == 1) {
-            Map.Entry entry = entries.next();
-            writeString(writer, String.valueOf(entry.getKey()));
-            writer.write(':');
-            if (indentFactor > 0) {
-                writer.write(' ');
-            }
-            writeJsonValue(writer, entry.getValue(), indentFactor, indent);
-        } else if (length != 0) {
-            final int newindent = indent + indentFactor;
-            while (entries.hasNext()) {
-                Map.Entry entry = entries.next();
-                if (commanate) {
-                    writer.write(',');
-                }
-                if (indentFactor > 0) {
-                    writer.write('\n');
-                }
-                writeIndent(writer, newindent);
-                writeString(writer, String.valueOf(entry.getKey()));
-                writer.write(':');
-                if (indentFactor > 0) {
-                    writer.write(' ');
-                }
-                writeJsonValue(writer, entry.getValue(), indentFactor, newindent);
-                commanate = true;
-            }
-            if (indentFactor > 0) {
-                writer.write('\n');
-            }
-            writeIndent(writer, indent);
+        JsonCharOutput output = open(writer);
+        try {
+            output.writeObject(values, indentFactor, indent);
+            output.flushBuffer();
+        } finally {
+            release(output);
         }
-        writer.write('}');
         return writer;
     }
 
@@ -177,27 +133,13 @@ public class JsonSerialization {
      * @throws IOException   If the underlying writer throws an IOException.
      */
     public static Writer writeJsonArray(Writer writer, Iterable<?> iterable, int indentFactor, int currentIndent) throws JsonException, IOException {
-        boolean alreadyDeclaredValue = false;
-        writer.write('[');
-
-        final int newIndent = currentIndent + indentFactor;
-        for (Object obj : iterable) {
-            if (alreadyDeclaredValue) {
-                writer.write(',');
-            }
-            if (indentFactor > 0) {
-                writer.write('\n');
-            }
-            writeIndent(writer, newIndent);
-            writeJsonValue(writer, obj, indentFactor, newIndent);
-            alreadyDeclaredValue = true;
-        }
-        if (indentFactor > 0) {
-            writer.write('\n');
+        JsonCharOutput output = open(writer);
+        try {
+            output.writeArray(iterable, indentFactor, currentIndent);
+            output.flushBuffer();
+        } finally {
+            release(output);
         }
-        writeIndent(writer, currentIndent);
-
-        writer.write(']');
         return writer;
     }
 
@@ -214,21 +156,41 @@ public class JsonSerialization {
      * @throws IOException   If the underlying writer throws an IOException.
      */
     public static Writer writeJsonValue(Writer writer, Object value, int indentFactor, int indent) throws JsonException, IOException {
-        if (value == null) {
-            writer.write("null");
-        } else if (value instanceof Map) {
-            writeJsonObject(writer, (Map) value, indent, indent);
-        } else if (value instanceof Iterable) {
-            writeJsonArray(writer, (Iterable) value, indentFactor, indent);
-        } else if (value instanceof Number) {
-            writeNumber(writer, (Number) value);
-        } else if (value instanceof Boolean) {
-            writer.write(value.toString());
-        } else if (value instanceof String) {
-            writeString(writer, value.toString());
-        } else {
-            throw new JsonException("Invalid value: expected null, Map, Iterable, Number, Boolean or String, found `" + value.toString() + "` (`" + value.getClass() + "`)");
+        JsonCharOutput output = open(writer);
+        try {
+            output.writeValue(value, indentFactor, indent);
+            output.flushBuffer();
+        } finally {
+            release(output);
         }
         return writer;
     }
+
+    /**
+     * Writes a json value to the given stream as UTF-8, in the same format as {@link #writeJsonValue(Writer, Object,
+     * int, int)}. The value is encoded straight to bytes, without a Writer.
+     *
+     * @param stream The stream to write to.
+     * @param value  The value to format. All Iterables will be formatted as json arrays, all Maps will be formatted as
+     *               json maps.
+     * @throws JsonException If value is of an unknown type, or a Map or Iterable value produces a value of an unknown
+     *                       type.
+     * @throws IOException   If the stream throws an IOException.
+     */
+    public static OutputStream writeJsonValue(OutputStream stream, Object value, int indentFactor, int indent) throws JsonException, IOException {
+        byte[] buffer = BYTE_BUFFERS.get();
+        if (buffer == null) {
+            buffer = new byte[JsonOutput.DEFAULT_BUFFER_SIZE];
+        } else {
+            BYTE_BUFFERS.set(null);
+        }
+        JsonByteOutput output = new JsonByteOutput(stream, buffer);
+        try {
+            output.writeValue(value, indentFactor, indent);
+            output.flushBuffer();
+        } finally {
+            BYTE_BUFFERS.set(output.getBuffer());
+        }
+        return stream;
+    }
 }
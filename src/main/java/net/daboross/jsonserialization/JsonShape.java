@@ -0,0 +1,126 @@
+/*
+ * JsonShape Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable key order and index shared by every JsonCompactMap with the same keys in the same order, used when
+ * {@link JsonParser#setShareObjectShapes(boolean)} is enabled.
+ * <p>
+ * Shapes form a tree of transitions from an empty root shape, one key at a time, so finding the shape for a key
+ * sequence which has been seen before creates nothing new. The keys and index of a shape are only created once a map
+ * actually has that shape. To bound the memory a tree can take, objects with more than 64 keys are never shared, and a
+ * tree stops growing once it has 4096 shapes. Objects which would need a new shape after that keep their own keys.
+ * <p>
+ * The transition tree is not thread safe, so each parser has its own. The keys and index of a shape never change once
+ * created, so maps sharing them may be read from any thread.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+final class JsonShape {
+
+    private static final int MAX_KEYS = 64;
+    private static final int MAX_SHAPES = 4096;
+    private final JsonShape root;
+    private final JsonShape parent;
+    private final String key;
+    private final int size;
+    /**
+     * The number of shapes in the tree, only kept by the root.
+     */
+    private int shapeCount;
+    private Map<String, JsonShape> transitions;
+    /**
+     * The keys, in order. Null until a map has this shape.
+     */
+    String[] keys;
+    /**
+     * Hash index of the keys, as built by {@link JsonCompactMap#buildIndex(String[], int, int)}.
+     */
+    int[] index;
+
+    /**
+     * Creates a new root shape, with no keys.
+     */
+    JsonShape() {
+        this.root = this;
+        this.parent = null;
+        this.key = null;
+        this.size = 0;
+        this.shapeCount = 1;
+    }
+
+    private JsonShape(JsonShape parent, String key) {
+        this.root = parent.root;
+        this.parent = parent;
+        this.key = key;
+        this.size = parent.size + 1;
+    }
+
+    /**
+     * Finds the shape with the given keys, creating it if needed. Must be called on a root shape.
+     *
+     * @param keys The keys, in order.
+     * @param size The number of keys.
+     * @return The shape, or null if the keys should not be shared.
+     */
+    JsonShape find(String[] keys, int size) {
+        if (size > MAX_KEYS) {
+            return null;
+        }
+        JsonShape shape = this;
+        for (int i = 0; i < size && shape != null; i++) {
+            shape = shape.transition(keys[i]);
+        }
+        if (shape != null && shape.keys == null) {
+            shape.keys = new String[shape.size];
+            for (JsonShape step = shape; step.parent != null; step = step.parent) {
+                shape.keys[step.size - 1] = step.key;
+            }
+            shape.index = JsonCompactMap.buildIndex(shape.keys, shape.size, shape.size);
+        }
+        return shape;
+    }
+
+    private JsonShape transition(String key) {
+        JsonShape next;
+        if (this.transitions == null) {
+            this.transitions = new HashMap<String, JsonShape>(4);
+        } else {
+            next = this.transitions.get(key);
+            if (next != null) {
+                return next;
+            }
+        }
+        if (this.root.shapeCount >= MAX_SHAPES) {
+            return null;
+        }
+        this.root.shapeCount++;
+        next = new JsonShape(this, key);
+        this.transitions.put(key, next);
+        return next;
+    }
+}
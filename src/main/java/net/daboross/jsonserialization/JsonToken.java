@@ -0,0 +1,72 @@
+/*
+ * JsonToken Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+/**
+ * Tokens produced by {@link JsonPullParser}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public enum JsonToken {
+    /**
+     * The start of a json object, `{`.
+     */
+    START_OBJECT,
+    /**
+     * The end of a json object, `}`.
+     */
+    END_OBJECT,
+    /**
+     * The start of a json array, `[`.
+     */
+    START_ARRAY,
+    /**
+     * The end of a json array, `]`.
+     */
+    END_ARRAY,
+    /**
+     * A key in a json object. The value for the key will be the next token.
+     */
+    FIELD_NAME,
+    /**
+     * A string value.
+     */
+    VALUE_STRING,
+    /**
+     * A number value, which is an Integer, Long or Double.
+     */
+    VALUE_NUMBER,
+    /**
+     * The literal `true`.
+     */
+    VALUE_TRUE,
+    /**
+     * The literal `false`.
+     */
+    VALUE_FALSE,
+    /**
+     * The literal `null`.
+     */
+    VALUE_NULL
+}
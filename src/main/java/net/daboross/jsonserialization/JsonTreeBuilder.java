@@ -0,0 +1,194 @@
+/*
+ * JsonTreeBuilder Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JsonHandler which builds the LinkedHashMaps and ArrayLists returned by {@link JsonParser#parseJsonObject()} and
+ * {@link JsonParser#parseJsonArray()}, or the JsonCompactMaps and JsonNumberLists used instead if
+ * {@link JsonParser#setCompactObjects(boolean)} or {@link JsonParser#setCompactNumericArrays(boolean)} are enabled.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+class JsonTreeBuilder implements JsonHandler {
+
+    private final JsonParser parser;
+    private final boolean compactNumericArrays;
+    private final boolean compactObjects;
+    private final JsonShape shapes;
+    /**
+     * Objects and arrays which have been started and not yet ended, innermost last.
+     */
+    private Object[] containers;
+    /**
+     * The key each of the containers will be stored under in its parent, if the parent is an object.
+     */
+    private String[] containerKeys;
+    private int depth;
+    private String key;
+    private Object result;
+
+    /**
+     * Creates a new JsonTreeBuilder.
+     *
+     * @param parser The parser, used to report duplicate keys.
+     */
+    public JsonTreeBuilder(JsonParser parser) {
+        this.parser = parser;
+        this.compactNumericArrays = parser.isCompactNumericArrays();
+        this.shapes = parser.getShapes();
+        this.compactObjects = parser.isCompactObjects() || this.shapes != null;
+        this.containers = new Object[8];
+        this.containerKeys = new String[8];
+        this.depth = 0;
+        this.key = null;
+        this.result = null;
+    }
+
+    /**
+     * Gets the value which was built.
+     *
+     * @return The outermost value passed to this handler.
+     */
+    public Object getResult() {
+        return this.result;
+    }
+
+    private void push(Object container) {
+        if (this.depth == this.containers.length) {
+            this.containers = Arrays.copyOf(this.containers, this.depth * 2);
+            this.containerKeys = Arrays.copyOf(this.containerKeys, this.depth * 2);
+        }
+        this.containers[this.depth] = container;
+        this.containerKeys[this.depth] = this.key;
+        this.depth += 1;
+        this.key = null;
+    }
+
+    private void pop() throws JsonException {
+        this.depth -= 1;
+        Object container = this.containers[this.depth];
+        this.key = this.containerKeys[this.depth];
+        this.containers[this.depth] = null;
+        this.containerKeys[this.depth] = null;
+        if (container instanceof JsonCompactMap) {
+            if (this.shapes != null) {
+                ((JsonCompactMap) container).shareShape(this.shapes);
+            } else {
+                ((JsonCompactMap) container).trimToSize();
+            }
+        } else if (container instanceof JsonNumberList) {
+            if (((JsonNumberList) container).isEmpty()) {
+                container = new ArrayList<Object>();
+            } else {
+                ((JsonNumberList) container).trimToSize();
+            }
+        }
+        // Containers are added to their parent once complete, so duplicate keys are reported after the value.
+        value(container);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void value(Object value) throws JsonException {
+        if (this.depth == 0) {
+            this.result = value;
+            return;
+        }
+        Object container = this.containers[this.depth - 1];
+        if (container instanceof Map) {
+            if (((Map<String, Object>) container).put(this.key, value) != null) {
+                // if we already had this key
+                throw this.parser.syntaxError("Expected unique key, found duplicate key \"" + this.key + "\"");
+            }
+        } else if (container instanceof JsonNumberList) {
+            JsonNumberList numbers = (JsonNumberList) container;
+            if (!numbers.addNumber(value)) {
+                // Not a number which fits alongside the others, so switch to a normal list.
+                List<Object> list = new ArrayList<Object>(numbers);
+                list.add(value);
+                this.containers[this.depth - 1] = list;
+            }
+        } else {
+            ((List<Object>) container).add(value);
+        }
+    }
+
+    @Override
+    public void startObject() {
+        if (this.compactObjects) {
+            push(new JsonCompactMap());
+        } else {
+            push(new LinkedHashMap<String, Object>());
+        }
+    }
+
+    @Override
+    public void key(String key) {
+        this.key = key;
+    }
+
+    @Override
+    public void endObject() throws JsonException {
+        pop();
+    }
+
+    @Override
+    public void startArray() {
+        if (this.compactNumericArrays) {
+            push(new JsonNumberList());
+        } else {
+            push(new ArrayList<Object>());
+        }
+    }
+
+    @Override
+    public void endArray() throws JsonException {
+        pop();
+    }
+
+    @Override
+    public void stringValue(String value) throws JsonException {
+        value(value);
+    }
+
+    @Override
+    public void numberValue(Number value) throws JsonException {
+        value(value);
+    }
+
+    @Override
+    public void booleanValue(boolean value) throws JsonException {
+        value(value ? Boolean.TRUE : Boolean.FALSE);
+    }
+
+    @Override
+    public void nullValue() throws JsonException {
+        value(null);
+    }
+}
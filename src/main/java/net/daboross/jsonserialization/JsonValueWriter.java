@@ -0,0 +1,232 @@
+/*
+ * JsonValueWriter Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes values of one kind to a JsonOutput. {@link JsonOutput#writeValue(Object, int, int)} looks up the writer for
+ * each value's class with {@link #forClass(Class)} instead of checking the value against every supported type in turn.
+ * <p>
+ * The most common classes have their own writers, which cast to the concrete class so that the calls made while
+ * writing them go to a single known implementation.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+abstract class JsonValueWriter {
+
+    static final JsonValueWriter STRING = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeString((String) value);
+        }
+    };
+    static final JsonValueWriter INTEGER = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeLong(((Integer) value).intValue());
+        }
+    };
+    static final JsonValueWriter LONG = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeLong(((Long) value).longValue());
+        }
+    };
+    static final JsonValueWriter DOUBLE = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            output.writeDouble(((Double) value).doubleValue());
+        }
+    };
+    static final JsonValueWriter BOOLEAN = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeRaw(((Boolean) value).booleanValue() ? "true" : "false");
+        }
+    };
+    static final JsonValueWriter NUMBER = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            output.writeNumber((Number) value);
+        }
+    };
+    static final JsonValueWriter ARRAY_LIST = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            ArrayList<?> list = (ArrayList<?>) value;
+            output.write('[');
+            final int newIndent = indent + indentFactor;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                output.writeElementStart(i == 0, indentFactor, newIndent);
+                output.writeValue(list.get(i), indentFactor, newIndent);
+            }
+            output.writeArrayEnd(indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter ITERABLE = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            output.writeArray((Iterable<?>) value, indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter OBJECT_ARRAY = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            output.writeArray((Object[]) value, indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter INT_ARRAY = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeArray((int[]) value, indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter LONG_ARRAY = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeArray((long[]) value, indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter DOUBLE_ARRAY = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            output.writeArray((double[]) value, indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter BOOLEAN_ARRAY = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws IOException {
+            output.writeArray((boolean[]) value, indentFactor, indent);
+        }
+    };
+    static final JsonValueWriter NUMBER_LIST = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            ((JsonNumberList) value).write(output, indentFactor, indent);
+        }
+    };
+    // Maps are written with indent as their indent factor, as they always have been.
+    static final JsonValueWriter LINKED_HASH_MAP = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            LinkedHashMap<?, ?> map = (LinkedHashMap<?, ?>) value;
+            output.writeEntries(map.entrySet().iterator(), map.size(), indent, indent);
+        }
+    };
+    static final JsonValueWriter HASH_MAP = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            HashMap<?, ?> map = (HashMap<?, ?>) value;
+            output.writeEntries(map.entrySet().iterator(), map.size(), indent, indent);
+        }
+    };
+    static final JsonValueWriter COMPACT_MAP = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            ((JsonCompactMap) value).write(output, indent, indent);
+        }
+    };
+    static final JsonValueWriter MAP = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException, IOException {
+            output.writeObject((Map<?, ?>) value, indent, indent);
+        }
+    };
+    static final JsonValueWriter INVALID = new JsonValueWriter() {
+        @Override
+        void write(JsonOutput output, Object value, int indentFactor, int indent) throws JsonException {
+            throw new JsonException("Invalid value: expected null, Map, Iterable, array, Number, Boolean or String,"
+                    + " found `" + value.toString() + "` (`" + value.getClass() + "`)");
+        }
+    };
+    private static final ConcurrentMap<Class<?>, JsonValueWriter> WRITERS
+            = new ConcurrentHashMap<Class<?>, JsonValueWriter>();
+
+    static {
+        WRITERS.put(String.class, STRING);
+        WRITERS.put(Integer.class, INTEGER);
+        WRITERS.put(Long.class, LONG);
+        WRITERS.put(Double.class, DOUBLE);
+        WRITERS.put(Boolean.class, BOOLEAN);
+        WRITERS.put(ArrayList.class, ARRAY_LIST);
+        WRITERS.put(LinkedHashMap.class, LINKED_HASH_MAP);
+        WRITERS.put(HashMap.class, HASH_MAP);
+        WRITERS.put(JsonCompactMap.class, COMPACT_MAP);
+        WRITERS.put(JsonNumberList.class, NUMBER_LIST);
+        WRITERS.put(Object[].class, OBJECT_ARRAY);
+        WRITERS.put(int[].class, INT_ARRAY);
+        WRITERS.put(long[].class, LONG_ARRAY);
+        WRITERS.put(double[].class, DOUBLE_ARRAY);
+        WRITERS.put(boolean[].class, BOOLEAN_ARRAY);
+    }
+
+    /**
+     * Writes a value, which must be an instance of a class this writer was returned for.
+     */
+    abstract void write(JsonOutput output, Object value, int indentFactor, int indent)
+            throws JsonException, IOException;
+
+    /**
+     * Gets the writer for values of the given class. Writers found for classes loaded by this library's class loader
+     * are cached, so that classes from other class loaders can still be unloaded.
+     *
+     * @param type The class of a non-null value.
+     * @return The writer to use.
+     */
+    static JsonValueWriter forClass(Class<?> type) {
+        JsonValueWriter writer = WRITERS.get(type);
+        if (writer == null) {
+            writer = resolve(type);
+            ClassLoader loader = type.getClassLoader();
+            if (loader == null || loader == JsonValueWriter.class.getClassLoader()) {
+                WRITERS.putIfAbsent(type, writer);
+            }
+        }
+        return writer;
+    }
+
+    private static JsonValueWriter resolve(Class<?> type) {
+        if (Map.class.isAssignableFrom(type)) {
+            return MAP;
+        } else if (Iterable.class.isAssignableFrom(type)) {
+            return ITERABLE;
+        } else if (Object[].class.isAssignableFrom(type)) {
+            return OBJECT_ARRAY;
+        } else if (Number.class.isAssignableFrom(type)) {
+            return NUMBER;
+        } else if (Boolean.class == type) {
+            return BOOLEAN;
+        } else if (String.class == type) {
+            return STRING;
+        }
+        return INVALID;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * ParallelInput Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * UTF-8 input shared by the parallel readers, along with their options. The input is a series of buffers which are
+ * never modified, and offsets into it are longs counting from the start of the first buffer.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+class ParallelInput {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+    private static final int MAPPED_WINDOW_SIZE = 1 << 30;
+    private final ByteBuffer[] windows;
+    private final long size;
+    int chunkSize;
+    ExecutorService executor;
+    JsonKeyCache keyCache;
+
+    private ParallelInput(ByteBuffer[] windows) {
+        this.windows = windows;
+        long size = 0;
+        for (ByteBuffer window : windows) {
+            size += window.remaining();
+        }
+        this.size = size;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.executor = null;
+        this.keyCache = null;
+    }
+
+    /**
+     * Memory maps the given file, and closes it.
+     */
+    public ParallelInput(File file) throws IOException {
+        this(JsonParser.mapFile(file, MAPPED_WINDOW_SIZE));
+    }
+
+    /**
+     * Reads the remaining bytes of the given buffer, without changing its position.
+     */
+    public ParallelInput(ByteBuffer input) {
+        this(new ByteBuffer[]{input.slice()});
+    }
+
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the buffers holding the input, in order. The returned buffers must not be modified.
+     */
+    public ByteBuffer[] getWindows() {
+        return this.windows;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Expected positive chunk size, found " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Creates a parser reading part of the input, using the key cache. Malformed UTF-8 is reported at its offset in
+     * the whole input.
+     *
+     * @param start The offset of the first byte to read.
+     * @param end   The offset after the last byte to read.
+     * @return A new JsonParser.
+     */
+    public JsonParser createParser(long start, long end) {
+        List<ByteBuffer> slices = new ArrayList<ByteBuffer>(1);
+        long windowStart = 0;
+        for (ByteBuffer window : this.windows) {
+            long windowEnd = windowStart + window.remaining();
+            if (windowEnd > start && windowStart < end) {
+                ByteBuffer slice = window.duplicate();
+                slice.limit(slice.position() + (int) (Math.min(end, windowEnd) - windowStart));
+                slice.position(slice.position() + (int) (Math.max(start, windowStart) - windowStart));
+                slices.add(slice);
+            }
+            windowStart = windowEnd;
+        }
+        Utf8Reader reader = slices.size() == 1 ? new Utf8Reader(slices.get(0))
+                : new Utf8Reader(slices.toArray(new ByteBuffer[slices.size()]));
+        reader.setStartOffset(start);
+        JsonParser parser = new JsonParser(reader, end - start);
+        parser.setKeyCache(this.keyCache);
+        return parser;
+    }
+
+    /**
+     * Runs the given tasks on the executor, or on a new thread pool if there is none.
+     *
+     * @param tasks The tasks to run.
+     * @return The result of each task, in the same order as the tasks.
+     * @throws ExecutionException If any task threw an exception. The remaining tasks are cancelled.
+     * @throws IOException        If the calling thread is interrupted while waiting.
+     */
+    public <T> List<T> runAll(List<Callable<T>> tasks) throws ExecutionException, IOException {
+        if (tasks.isEmpty()) {
+            return new ArrayList<T>(0);
+        }
+        ExecutorService executor = this.executor;
+        boolean ownExecutor = executor == null;
+        if (ownExecutor) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            List<T> results = new ArrayList<T>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while parsing");
+            interrupted.initCause(ex);
+            throw interrupted;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            if (ownExecutor) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Rethrows the cause of an ExecutionException from {@link #runAll(List)} if it is unchecked or an IOException.
+     *
+     * @param ex The exception thrown by runAll.
+     * @return The JsonException which caused it, if any.
+     * @throws IOException If the cause is an IOException.
+     */
+    public static JsonException unwrap(ExecutionException ex) throws IOException {
+        Throwable cause = ex.getCause();
+        if (cause instanceof JsonException) {
+            return (JsonException) cause;
+        } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Utf8Reader Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * The Software shall be used for Good, not Evil.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Unsynchronized Reader decoding UTF-8 from a byte array, ByteBuffers or an InputStream. Used by JsonParser to decode
+ * bytes straight into its own buffer, without a CharsetDecoder or any intermediate char buffers. Runs of ASCII are
+ * decoded with a tight loop, and a leading byte order mark is skipped.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+class Utf8Reader extends Reader {
+
+    private static final int CHUNK_SIZE = 8192;
+    private final InputStream stream;
+    private final ByteBuffer[] sources;
+    private int sourceIndex;
+    private final byte[] bytes;
+    /**
+     * Offset in the whole input of bytes[0], used for error messages.
+     */
+    private long bytesDiscarded;
+    private int position;
+    private int limit;
+    private char pendingLowSurrogate;
+    private boolean checkedByteOrderMark;
+
+    /**
+     * Creates a Utf8Reader reading directly from a range of the given array. The array is not copied.
+     */
+    public Utf8Reader(byte[] input, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > input.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset " + offset + ", length " + length
+                    + ", array length " + input.length);
+        }
+        this.stream = null;
+        this.sources = null;
+        this.bytes = input;
+        this.bytesDiscarded = -offset;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Creates a Utf8Reader reading the remaining bytes of the given buffer. Array-backed buffers are read directly,
+     * other buffers are copied out in chunks. The position of the given buffer is not changed.
+     */
+    public Utf8Reader(ByteBuffer input) {
+        this.stream = null;
+        if (input.hasArray()) {
+            this.sources = null;
+            this.bytes = input.array();
+            this.position = input.arrayOffset() + input.position();
+            this.limit = input.arrayOffset() + input.limit();
+            this.bytesDiscarded = -this.position;
+        } else {
+            this.sources = new ByteBuffer[]{input.duplicate()};
+            this.bytes = new byte[CHUNK_SIZE];
+            this.position = 0;
+            this.limit = 0;
+            this.bytesDiscarded = 0;
+        }
+    }
+
+    /**
+     * Creates a Utf8Reader reading the remaining bytes of each of the given buffers in turn, copying them out in
+     * chunks. Multi-byte characters may be split between buffers. The positions of the given buffers are changed.
+     */
+    public Utf8Reader(ByteBuffer[] inputs) {
+        this.stream = null;
+        this.sources = inputs;
+        this.bytes = new byte[CHUNK_SIZE];
+        this.position = 0;
+        this.limit = 0;
+        this.bytesDiscarded = 0;
+    }
+
+    /**
+     * Creates a Utf8Reader reading from the given stream in chunks.
+     */
+    public Utf8Reader(InputStream input) {
+        this.stream = input;
+        this.sources = null;
+        this.bytes = new byte[CHUNK_SIZE];
+        this.position = 0;
+        this.limit = 0;
+        this.bytesDiscarded = 0;
+    }
+
+    /**
+     * Sets the offset in the whole input of the first byte to read, for a reader covering only part of an input. Error
+     * messages then give offsets in the whole input, and a byte order mark is only skipped at offset 0. This must be
+     * called before reading.
+     */
+    void setStartOffset(long offset) {
+        this.bytesDiscarded += offset;
+        this.checkedByteOrderMark = offset != 0;
+    }
+
+    /**
+     * Makes sure at least the given number of bytes are available after position, moving any remaining bytes to the
+     * start of the chunk and reading more.
+     *
+     * @param needed The number of bytes needed.
+     * @return True if the bytes are available, false if the end of the input was reached first.
+     * @throws IOException If the underlying stream throws an IOException.
+     */
+    private boolean fillBytes(int needed) throws IOException {
+        if (this.stream == null && this.sources == null) {
+            return this.limit - this.position >= needed;
+        }
+        int remaining = this.limit - this.position;
+        System.arraycopy(this.bytes, this.position, this.bytes, 0, remaining);
+        this.bytesDiscarded += this.position;
+        this.position = 0;
+        this.limit = remaining;
+        while (this.limit < needed) {
+            int read;
+            if (this.stream != null) {
+                read = this.stream.read(this.bytes, this.limit, this.bytes.length - this.limit);
+            } else {
+                while (this.sourceIndex < this.sources.length && !this.sources[this.sourceIndex].hasRemaining()) {
+                    this.sourceIndex += 1;
+                }
+                if (this.sourceIndex < this.sources.length) {
+                    ByteBuffer source = this.sources[this.sourceIndex];
+                    read = Math.min(source.remaining(), this.bytes.length - this.limit);
+                    source.get(this.bytes, this.limit, read);
+                } else {
+                    read = -1;
+                }
+            }
+            if (read < 0) {
+                return false;
+            }
+            this.limit += read;
+        }
+        return true;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.checkedByteOrderMark) {
+            this.checkedByteOrderMark = true;
+            if (fillBytes(1) && this.bytes[this.position] == (byte) 0xEF && fillBytes(3)
+                    && this.bytes[this.position + 1] == (byte) 0xBB && this.bytes[this.position + 2] == (byte) 0xBF) {
+                this.position += 3;
+            }
+        }
+        int out = offset;
+        final int end = offset + length;
+        if (this.pendingLowSurrogate != 0) {
+            buffer[out++] = this.pendingLowSurrogate;
+            this.pendingLowSurrogate = 0;
+        }
+        final byte[] bytes = this.bytes;
+        while (out < end) {
+            if (this.position >= this.limit) {
+                // Only block for more input if nothing has been decoded yet.
+                if (out > offset || !fillBytes(1)) {
+                    break;
+                }
+            }
+            int pos = this.position;
+            int asciiEnd = pos + Math.min(end - out, this.limit - pos);
+            while (pos < asciiEnd && bytes[pos] >= 0) {
+                buffer[out++] = (char) bytes[pos++];
+            }
+            this.position = pos;
+            if (pos == asciiEnd) {
+                continue;
+            }
+            int lead = bytes[pos] & 0xFF;
+            int needed = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC2 ? 2 : 0;
+            if (needed == 0 || lead > 0xF4) {
+                throw malformed(pos);
+            }
+            if (this.limit - pos < needed) {
+                if (out > offset) {
+                    break;
+                }
+                if (!fillBytes(needed)) {
+                    throw new CharConversionException("Truncated UTF-8 input at byte "
+                            + (this.bytesDiscarded + this.position));
+                }
+                pos = this.position;
+            }
+            int codePoint;
+            switch (needed) {
+                case 2:
+                    codePoint = ((lead & 0x1F) << 6) | continuation(pos + 1);
+                    break;
+                case 3:
+                    codePoint = ((lead & 0x0F) << 12) | (continuation(pos + 1) << 6) | continuation(pos + 2);
+                    if (codePoint < 0x800 || (codePoint >= 0xD800 && codePoint < 0xE000)) {
+                        throw malformed(pos);
+                    }
+                    break;
+                default:
+                    codePoint = ((lead & 0x07) << 18) | (continuation(pos + 1) << 12)
+                            | (continuation(pos + 2) << 6) | continuation(pos + 3);
+                    if (codePoint < 0x10000 || codePoint > 0x10FFFF) {
+                        throw malformed(pos);
+                    }
+            }
+            this.position = pos + needed;
+            if (codePoint < 0x10000) {
+                buffer[out++] = (char) codePoint;
+            } else {
+                codePoint -= 0x10000;
+                buffer[out++] = (char) (0xD800 + (codePoint >>> 10));
+                char low = (char) (0xDC00 + (codePoint & 0x3FF));
+                if (out < end) {
+                    buffer[out++] = low;
+                } else {
+                    this.pendingLowSurrogate = low;
+                }
+            }
+        }
+        return out == offset ? -1 : out - offset;
+    }
+
+    /**
+     * Reads the payload bits of a UTF-8 continuation byte.
+     *
+     * @param index The index of the byte in the chunk.
+     * @return The lower 6 bits of the byte.
+     * @throws CharConversionException If the byte is not a continuation byte.
+     */
+    private int continuation(int index) throws CharConversionException {
+        int b = this.bytes[index];
+        if ((b & 0xC0) != 0x80) {
+            throw malformed(index);
+        }
+        return b & 0x3F;
+    }
+
+    private CharConversionException malformed(int index) {
+        return new CharConversionException("Malformed UTF-8 input at byte " + (this.bytesDiscarded + index));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.stream != null) {
+            this.stream.close();
+        }
+    }
+}
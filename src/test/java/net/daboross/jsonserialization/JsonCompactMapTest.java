@@ -0,0 +1,198 @@
+/*
+ * Tests for JsonCompactMap
+ * Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonCompactMap}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonCompactMapTest {
+
+    @Test
+    public void testMatchesLinkedHashMap() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            Map<String, Object> expected = new LinkedHashMap<String, Object>();
+            JsonCompactMap actual = new JsonCompactMap(random.nextInt(3));
+            int keyRange = 1 + random.nextInt(40);
+            for (int i = 0; i < 400; i++) {
+                String key = random.nextInt(20) == 0 ? null : "k" + random.nextInt(keyRange);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        assertEquals(expected.remove(key), actual.remove(key));
+                        break;
+                    case 1:
+                        assertEquals(expected.containsKey(key), actual.containsKey(key));
+                        assertEquals(expected.get(key), actual.get(key));
+                        break;
+                    case 2:
+                        if (random.nextInt(10) == 0) {
+                            actual.trimToSize();
+                        }
+                        break;
+                    default:
+                        assertEquals(expected.put(key, i), actual.put(key, i));
+                }
+                assertEquals(expected.size(), actual.size());
+            }
+            assertEquals(new ArrayList<Object>(expected.entrySet()), new ArrayList<Object>(actual.entrySet()));
+            assertEquals(expected, actual);
+            assertEquals(actual, expected);
+            assertEquals(expected.hashCode(), actual.hashCode());
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        JsonCompactMap map = new JsonCompactMap();
+        for (int i = 0; i < 20; i++) {
+            map.put("k" + i, i);
+        }
+        for (Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Object> entry = it.next();
+            if ((Integer) entry.getValue() % 3 != 0) {
+                it.remove();
+            } else {
+                entry.setValue("x" + entry.getValue());
+            }
+        }
+        List<String> keys = new ArrayList<String>(map.keySet());
+        assertEquals("[k0, k3, k6, k9, k12, k15, k18]", keys.toString());
+        assertEquals("x9", map.get("k9"));
+        assertNull(map.get("k10"));
+    }
+
+    @Test
+    public void testParsedObjects() throws IOException, JsonException {
+        StringBuilder input = new StringBuilder("{\"small\": {\"a\": 1, \"b\": [true, null]}, \"large\": {");
+        for (int i = 0; i < 30; i++) {
+            input.append("\"key").append(i).append("\": {\"n\": ").append(i).append("}, ");
+        }
+        input.append("\"last\": {}}, \"empty\": {}}");
+        Map<String, Object> normal = new JsonParser(input.toString()).parseJsonObject();
+        JsonParser parser = new JsonParser(input.toString());
+        parser.setCompactObjects(true);
+        Map<String, Object> compact = parser.parseJsonObject();
+        JsonIndexedParser indexedParser = new JsonIndexedParser(input.toString());
+        indexedParser.setCompactObjects(true);
+        Object indexed = indexedParser.parseItem();
+        assertEquals(normal, compact);
+        assertEquals(normal, indexed);
+        assertTrue(compact instanceof JsonCompactMap);
+        assertTrue(indexed instanceof JsonCompactMap);
+        assertTrue(compact.get("large") instanceof JsonCompactMap);
+        assertTrue(((Map<?, ?>) indexed).get("empty") instanceof JsonCompactMap);
+        String expected = JsonSerialization.writeJsonObject(new StringWriter(), normal, 2, 0).toString();
+        assertEquals(expected, JsonSerialization.writeJsonObject(new StringWriter(), compact, 2, 0).toString());
+        assertEquals(expected, JsonSerialization.writeJsonObject(new StringWriter(), (Map<?, ?>) indexed, 2, 0)
+                .toString());
+    }
+
+    @Test
+    public void testDuplicateKeys() throws IOException {
+        String input = "{\"a\": 1, \"b\": 2, \"a\": 3}";
+        String expectedMessage = null;
+        try {
+            new JsonParser(input).parseJsonObject();
+        } catch (JsonException ex) {
+            expectedMessage = ex.getMessage();
+        }
+        assertNotNull(expectedMessage);
+        JsonParser parser = new JsonParser(input);
+        parser.setCompactObjects(true);
+        try {
+            parser.parseJsonObject();
+            fail();
+        } catch (JsonException ex) {
+            assertEquals(expectedMessage, ex.getMessage());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSharedShapes() throws IOException, JsonException {
+        StringBuilder input = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            input.append(i % 50 == 7 ? "{\"id\": " + i + ", \"extra\": true}, " : "{\"id\": " + i + ", \"name\": \"n"
+                    + i + "\", \"tags\": {\"k0\": 0, \"k1\": 1, \"k2\": 2, \"k3\": 3, \"k4\": 4, \"k5\": 5, "
+                    + "\"k6\": 6, \"k7\": 7, \"k8\": " + i + "}}, ");
+        }
+        input.append("{}]");
+        List<Object> normal = new JsonParser(input.toString()).parseJsonArray();
+        JsonParser parser = new JsonParser(input.toString());
+        parser.setShareObjectShapes(true);
+        List<Object> shared = parser.parseJsonArray();
+        JsonIndexedParser indexedParser = new JsonIndexedParser(input.toString());
+        indexedParser.setShareObjectShapes(true);
+        List<Object> indexed = (List<Object>) indexedParser.parseItem();
+        assertEquals(normal, shared);
+        assertEquals(normal, indexed);
+        for (List<Object> list : Arrays.asList(shared, indexed)) {
+            Map<String, Object> first = (Map<String, Object>) list.get(0);
+            Map<String, Object> second = (Map<String, Object>) list.get(1);
+            assertTrue(first instanceof JsonCompactMap);
+            assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+            Map<String, Object> tags = (Map<String, Object>) second.get("tags");
+            assertEquals(1, tags.get("k8"));
+            assertEquals(7, tags.get("k7"));
+
+            // Changing the keys of one map does not change the others with the same shape.
+            first.remove("name");
+            first.put("added", 1);
+            ((Map<String, Object>) first.get("tags")).put("k9", 9);
+            assertEquals(normal.get(1), second);
+            assertEquals(normal.get(2), list.get(2));
+            assertEquals(normal.get(3), list.get(3));
+            assertEquals("[id, tags, added]", first.keySet().toString());
+        }
+        assertEquals(JsonSerialization.writeJsonValue(new StringWriter(), normal.subList(100, 201), 2, 0).toString(),
+                JsonSerialization.writeJsonValue(new StringWriter(), shared.subList(100, 201), 2, 0).toString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIndexedFallbackKeepsShapes() throws JsonException {
+        // Unquoted keys make the indexed parser fall back to a plain JsonParser.
+        JsonIndexedParser indexedParser = new JsonIndexedParser("[{1: 1, 2: 2}, {1: 3, 2: 4}]");
+        indexedParser.setShareObjectShapes(true);
+        Map<String, Object> first = ((List<Map<String, Object>>) indexedParser.parseItem()).get(0);
+        Map<String, Object> second = ((List<Map<String, Object>>) indexedParser.parseItem()).get(1);
+        assertEquals(4, second.get("2"));
+        assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+    }
+}
@@ -1,5 +1,7 @@
 package net.daboross.jsonserialization;
 
+import static org.junit.Assert.*;
+
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.file.Files;
@@ -29,6 +31,11 @@ public class JsonDeserializeTest {
         JsonSerialization.writeJsonValue(writer, deserialized, 0, 0);
     }
 
+    @Test
+    public void testIndexedParserMatches() throws IOException, JsonException {
+        assertEquals(new JsonParser(data).nextItem(), new JsonIndexedParser(data).parseItem());
+    }
+
     @Parameters
     public static Collection<Object[]> getData() {
         try {
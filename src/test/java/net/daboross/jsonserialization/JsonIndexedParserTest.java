@@ -0,0 +1,92 @@
+/*
+ * Tests for JsonIndexedParser
+ * Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonIndexedParser}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonIndexedParserTest {
+
+    @Test
+    public void testStringsAcrossBlocks() throws IOException, JsonException {
+        // Runs of backslashes and quotes crossing the 64 character blocks of stage 1.
+        StringBuilder input = new StringBuilder("{");
+        for (int i = 0; i < 40; i++) {
+            input.append("\"k").append(i).append("\": \"");
+            for (int j = 0; j < i; j++) {
+                input.append("\\\\");
+            }
+            input.append("\\\"],{ \", ");
+        }
+        input.append("\"last\": [1, -2.5e3, 12345678901, true, FALSE, null, \"\\u00e9\"]}");
+        Object expected = new JsonParser(input.toString()).nextItem();
+        assertEquals(expected, new JsonIndexedParser(input.toString()).parseItem());
+        assertEquals(41, ((Map<?, ?>) expected).size());
+    }
+
+    @Test
+    public void testSameResults() throws JsonException {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        object.put("a", Arrays.asList(1, 2L << 40, 0.5));
+        object.put("b", "x");
+        String input = " {\"a\": [1, 2199023255552, 5e-1,], \"b\": \"x\",} tail";
+        assertEquals(object, new JsonIndexedParser(input).parseItem());
+        assertEquals(42, new JsonIndexedParser("42").parseItem());
+        assertEquals("text", new JsonIndexedParser("\"text\" 1 2").parseItem());
+        char[] chars = "xx[[], {}]xx".toCharArray();
+        assertEquals(Arrays.asList(Arrays.asList(), new LinkedHashMap<String, Object>()),
+                new JsonIndexedParser(chars, 2, 8).parseItem());
+    }
+
+    @Test
+    public void testErrorsMatchParser() throws IOException {
+        String[] inputs = {"[1 2]", "{\"a\": 1 \"b\": 2}", "[1=2]", "{\"a\": 1, \"a\": 2}", "[\"a\nb\"]", "[1, , 2]",
+                "{\"a\" 1}", "[tru]", "[1, [2, 3]", ""};
+        for (String input : inputs) {
+            String expected = null;
+            try {
+                new JsonParser(input).nextItem();
+            } catch (JsonException ex) {
+                expected = ex.getMessage();
+            }
+            assertNotNull(input, expected);
+            try {
+                new JsonIndexedParser(input).parseItem();
+                fail(input);
+            } catch (JsonException ex) {
+                assertEquals(expected, ex.getMessage());
+            }
+        }
+    }
+}
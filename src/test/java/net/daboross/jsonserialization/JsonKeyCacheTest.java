@@ -0,0 +1,74 @@
+/*
+ * Tests for JsonKeyCache
+ * Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonKeyCache}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonKeyCacheTest {
+
+    @Test
+    public void testCacheHitReturnsSameInstance() {
+        JsonKeyCache cache = new JsonKeyCache();
+        char[] chars = "xxkeyxx".toCharArray();
+        String first = cache.get(chars, 2, 3);
+        assertEquals("key", first);
+        assertSame(first, cache.get("key".toCharArray(), 0, 3));
+    }
+
+    @Test
+    public void testCollidingKeysStayCorrect() {
+        JsonKeyCache cache = new JsonKeyCache(1);
+        for (int i = 0; i < 100; i++) {
+            String key = "k" + (i % 7);
+            assertEquals(key, cache.get(key.toCharArray(), 0, key.length()));
+        }
+    }
+
+    @Test
+    public void testKeysSharedBetweenParsers() throws IOException, JsonException {
+        JsonKeyCache cache = new JsonKeyCache();
+        List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 3; i++) {
+            JsonParser parser = new JsonParser("{\"id\": " + i + ", \"na\\u006De\": \"x\"}");
+            parser.setKeyCache(cache);
+            maps.add(parser.parseJsonObject());
+        }
+        String firstId = maps.get(0).keySet().iterator().next();
+        for (Map<String, Object> map : maps) {
+            List<String> keys = new ArrayList<String>(map.keySet());
+            assertSame(firstId, keys.get(0));
+            assertEquals("name", keys.get(1));
+        }
+    }
+}
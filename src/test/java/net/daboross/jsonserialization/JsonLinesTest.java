@@ -0,0 +1,201 @@
+/*
+ * Tests for JsonLinesReader and JsonLinesWriter
+ * Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import static org.junit.Assert.*;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonLinesReader}, {@link JsonLinesParallelReader} and {@link JsonLinesWriter}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonLinesTest {
+
+    @Test
+    public void testReadRecords() throws IOException, JsonException {
+        String input = "{\"id\": 1}\n\n[1, 2]  \r\n\"text\"\n42\ntrue";
+        List<Object> records = new ArrayList<Object>();
+        for (Object record : new JsonLinesReader(new JsonParser(input))) {
+            records.add(record);
+        }
+        Map<String, Object> first = new LinkedHashMap<String, Object>();
+        first.put("id", 1);
+        assertEquals(Arrays.<Object>asList(first, Arrays.asList(1, 2), "text", 42, true), records);
+    }
+
+    @Test(expected = JsonException.class)
+    public void testTwoRecordsOnOneLine() throws IOException, JsonException {
+        JsonLinesReader reader = new JsonLinesReader(new JsonParser("{\"a\": 1} {\"b\": 2}\n"));
+        while (reader.hasNextValue()) {
+            reader.nextValue();
+        }
+    }
+
+    @Test
+    public void testWriteAndReadBack() throws IOException, JsonException {
+        Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("text", "multi\nline");
+        record.put("list", Arrays.asList(1, 2.5, null));
+        StringWriter output = new StringWriter();
+        JsonLinesWriter writer = new JsonLinesWriter(output);
+        writer.write(record);
+        writer.write("second");
+        writer.close();
+        assertEquals("{\"text\":\"multi\\nline\",\"list\":[1,2.5,null]}\n\"second\"\n", output.toString());
+
+        JsonLinesReader reader = new JsonLinesReader(new JsonParser(output.toString()));
+        assertTrue(reader.hasNextValue());
+        assertEquals(record, reader.nextValue());
+        assertTrue(reader.hasNextValue());
+        assertEquals("second", reader.nextValue());
+        assertFalse(reader.hasNextValue());
+    }
+
+    @Test
+    public void testParallelReadKeepsOrder() throws IOException, JsonException {
+        StringBuilder input = new StringBuilder();
+        List<Object> expected = new ArrayList<Object>();
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("id", i);
+            record.put("name", "r\u00e9cord " + i);
+            expected.add(record);
+            input.append("{\"id\": ").append(i).append(", \"name\": \"r\u00e9cord ").append(i).append("\"}");
+            input.append(i % 7 == 0 ? "\r\n\n" : "\n");
+        }
+        JsonLinesParallelReader reader = new JsonLinesParallelReader(
+                input.toString().getBytes(StandardCharsets.UTF_8));
+        reader.setChunkSize(100);
+        reader.setKeyCache(new JsonKeyCache());
+        assertEquals(expected, reader.readAll());
+
+        ConcurrentLinkedQueue<Object> consumed = new ConcurrentLinkedQueue<Object>();
+        reader.readAll(consumed::add);
+        assertEquals(expected.size(), consumed.size());
+        assertTrue(consumed.containsAll(expected));
+    }
+
+    @Test
+    public void testParallelReadErrorPosition() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            input.append(i == 150 ? "[1, 2" : "[1, 2]").append('\n');
+        }
+        String sequentialMessage = null;
+        try {
+            JsonLinesReader reader = new JsonLinesReader(new JsonParser(input.toString()));
+            while (reader.hasNextValue()) {
+                reader.nextValue();
+            }
+        } catch (JsonException ex) {
+            sequentialMessage = ex.getMessage();
+        }
+        assertNotNull(sequentialMessage);
+        JsonLinesParallelReader reader = new JsonLinesParallelReader(
+                input.toString().getBytes(StandardCharsets.UTF_8));
+        reader.setChunkSize(64);
+        try {
+            reader.readAll();
+            fail();
+        } catch (JsonException ex) {
+            assertEquals(sequentialMessage, ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testRecordSpanningLines() throws IOException {
+        String input = "{\"a\": 1}\n{\"a\":\n2}\n{\"b\": 3}\n";
+        String sequentialMessage = null;
+        try {
+            JsonLinesReader reader = new JsonLinesReader(new JsonParser(input));
+            while (reader.hasNextValue()) {
+                reader.nextValue();
+            }
+        } catch (JsonException ex) {
+            sequentialMessage = ex.getMessage();
+        }
+        assertNotNull(sequentialMessage);
+        JsonLinesParallelReader reader = new JsonLinesParallelReader(input.getBytes(StandardCharsets.UTF_8));
+        reader.setChunkSize(1);
+        try {
+            reader.readAll();
+            fail();
+        } catch (JsonException ex) {
+            assertEquals(sequentialMessage, ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testParallelConsumerException() throws IOException {
+        final JsonException thrown = new JsonException("stop");
+        JsonLinesParallelReader reader = new JsonLinesParallelReader(
+                "1\n2\n3\n".getBytes(StandardCharsets.UTF_8));
+        reader.setChunkSize(1);
+        try {
+            reader.readAll(record -> {
+                if (Integer.valueOf(2).equals(record)) {
+                    throw thrown;
+                }
+            });
+            fail();
+        } catch (JsonException ex) {
+            assertSame(thrown, ex);
+        }
+    }
+
+    @Test
+    public void testParallelMalformedUtf8Position() throws IOException, JsonException {
+        byte[] input = "{\"a\": 1}\n{\"a\": 2}\n{\"a\": \"?\"}\n".getBytes(StandardCharsets.UTF_8);
+        input[input.length - 4] = (byte) 0xFF;
+        String sequentialMessage = null;
+        try {
+            JsonLinesReader reader = new JsonLinesReader(new JsonParser(input));
+            while (reader.hasNextValue()) {
+                reader.nextValue();
+            }
+        } catch (CharConversionException ex) {
+            sequentialMessage = ex.getMessage();
+        }
+        assertNotNull(sequentialMessage);
+        JsonLinesParallelReader reader = new JsonLinesParallelReader(input);
+        reader.setChunkSize(1);
+        try {
+            reader.readAll();
+            fail();
+        } catch (CharConversionException ex) {
+            assertEquals(sequentialMessage, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Tests for JsonOutput
+ * Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonOutput} and its implementations.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonOutputTest {
+
+    private static Map<String, Object> sample() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            longText.append("run ").append(i).append(i % 10 == 0 ? "\n\u0001</\u2028\"\\" : "");
+        }
+        Map<String, Object> nested = new LinkedHashMap<String, Object>();
+        nested.put("text", longText.toString());
+        nested.put("list", Arrays.asList(1, 2.5, true, null, Arrays.asList()));
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        root.put("nested", nested);
+        root.put("number", 12345678901L);
+        return root;
+    }
+
+    @Test
+    public void testCharOutputSmallBuffer() throws IOException, JsonException {
+        StringWriter expected = new StringWriter();
+        JsonSerialization.writeJsonObject(expected, sample(), 4, 2);
+        StringWriter actual = new StringWriter();
+        JsonCharOutput output = new JsonCharOutput(actual, 16);
+        output.writeObject(sample(), 4, 2);
+        output.flush();
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testEscapes() throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonSerialization.writeString(writer, "a\"\\/</\b\t\n\f\r\u0000\u001f\u0080\u009f\u00a0\u2000\u20ff\u2100");
+        assertEquals("\"a\\\"\\\\/<\\/\\b\\t\\n\\f\\r\\u0000\\u001f\\u0080\\u009f\u00a0\\u2000\\u20ff\u2100\"",
+                writer.toString());
+    }
+
+    @Test
+    public void testByteOutputMatchesCharOutput() throws IOException, JsonException {
+        Map<String, Object> value = sample();
+        value.put("unicode", "\u00e9\u0800\ud83d\ude00\ud800 \u2028");
+        StringWriter chars = new StringWriter();
+        JsonSerialization.writeJsonValue(chars, value, 2, 0);
+        byte[] expected = chars.toString().replace('\ud800', '?').getBytes("UTF-8");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonByteOutput streamOutput = new JsonByteOutput(stream, 16);
+        streamOutput.writeValue(value, 2, 0);
+        streamOutput.flush();
+        assertArrayEquals(expected, stream.toByteArray());
+
+        JsonByteOutput arrayOutput = new JsonByteOutput();
+        arrayOutput.writeValue(value, 2, 0);
+        assertArrayEquals(expected, arrayOutput.toByteArray());
+
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+        JsonByteOutput bufferOutput = new JsonByteOutput(buffer);
+        bufferOutput.writeValue(value, 2, 0);
+        bufferOutput.flush();
+        assertArrayEquals(expected, buffer.array());
+    }
+
+    private static String write(JsonEscapePolicy policy, String value, boolean bytes) throws IOException {
+        if (bytes) {
+            JsonByteOutput output = new JsonByteOutput();
+            output.setEscapePolicy(policy);
+            output.writeString(value);
+            return new String(output.toByteArray(), "UTF-8");
+        }
+        StringWriter writer = new StringWriter();
+        JsonCharOutput output = new JsonCharOutput(writer);
+        output.setEscapePolicy(policy);
+        output.writeString(value);
+        output.flush();
+        return writer.toString();
+    }
+
+    @Test
+    public void testByteOutputBufferSize() {
+        for (int bufferSize : new int[]{-1, 0, 15}) {
+            try {
+                new JsonByteOutput(new ByteArrayOutputStream(), bufferSize);
+                fail("Expected IllegalArgumentException for " + bufferSize);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testWriteErrorNotHiddenByFlush() throws IOException {
+        Map<String, Object> value = new HashMap<String, Object>();
+        value.put("unsupported", new Object());
+        Writer failingWriter = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("write failed");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        OutputStream failingStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("write failed");
+            }
+        };
+        try {
+            JsonSerialization.writeJsonObject(failingWriter, value, 0, 0);
+            fail("Expected JsonException");
+        } catch (JsonException expected) {
+        }
+        try {
+            JsonSerialization.writeJsonValue(failingStream, value, 0, 0);
+            fail("Expected JsonException");
+        } catch (JsonException expected) {
+        }
+    }
+
+    @Test
+    public void testEscapePolicies() throws IOException, JsonException {
+        String value = "</a>&'\u0001\n\u0085\u00e9\u2028\ud83d\ude00";
+        for (boolean bytes : new boolean[]{false, true}) {
+            assertEquals("\"<\\/a>&'\\u0001\\n\\u0085\u00e9\\u2028\ud83d\ude00\"",
+                    write(JsonEscapePolicy.DEFAULT, value, bytes));
+            assertEquals("\"</a>&'\\u0001\\n\u0085\u00e9\u2028\ud83d\ude00\"",
+                    write(JsonEscapePolicy.MINIMAL, value, bytes));
+            String ascii = write(JsonEscapePolicy.ASCII_ONLY, value, bytes);
+            assertEquals("\"<\\/a>&'\\u0001\\n\\u0085\\u00e9\\u2028\\ud83d\\ude00\"", ascii);
+            assertEquals(value, new JsonParser(ascii).nextItem());
+            assertEquals("\"\\u003c/a\\u003e\\u0026\\u0027\\u0001\\n\\u0085\u00e9\\u2028\ud83d\ude00\"",
+                    write(JsonEscapePolicy.HTML_SAFE, value, bytes));
+        }
+    }
+
+    private static String writeNumber(Number number) throws IOException, JsonException {
+        StringWriter writer = new StringWriter();
+        JsonCharOutput output = new JsonCharOutput(writer, 16);
+        output.writeNumber(number);
+        output.flush();
+        return writer.toString();
+    }
+
+    @Test
+    public void testNumbers() throws IOException, JsonException {
+        assertEquals("0", writeNumber(0));
+        assertEquals("-2147483648", writeNumber(Integer.MIN_VALUE));
+        assertEquals("-9223372036854775808", writeNumber(Long.MIN_VALUE));
+        assertEquals("-12", writeNumber((short) -12));
+        assertEquals("0.0", writeNumber(0.0));
+        assertEquals("-0.0", writeNumber(-0.0));
+        assertEquals("1000000.0", writeNumber(1e6));
+        assertEquals("1.0E7", writeNumber(1e7));
+        assertEquals("0.001", writeNumber(0.001));
+        assertEquals("1.0E-4", writeNumber(0.0001));
+        assertEquals("123.456", writeNumber(123.456));
+        assertEquals("4.9E-324", writeNumber(Double.MIN_VALUE));
+        assertEquals("1.7976931348623157E308", writeNumber(Double.MAX_VALUE));
+        assertEquals("-2.2250738585072014E-308", writeNumber(-Double.MIN_NORMAL));
+        // Older versions of Double.toString write this as 2.82879384806159008E17
+        assertEquals("2.82879384806159E17", writeNumber(2.82879384806159E17));
+        assertEquals("1.5", writeNumber(1.5f));
+    }
+
+    @Test
+    public void testNumbersRoundTrip() throws IOException, JsonException {
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            long longValue = random.nextLong() >> random.nextInt(64);
+            assertEquals(Long.toString(longValue), writeNumber(longValue));
+            double doubleValue = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                continue;
+            }
+            String written = writeNumber(doubleValue);
+            assertEquals(written, doubleValue, Double.parseDouble(written), 0);
+            assertTrue(written, written.length() <= Double.toString(doubleValue).length());
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            JsonByteOutput bytes = new JsonByteOutput(stream, 16);
+            bytes.writeNumber(doubleValue);
+            bytes.flush();
+            assertEquals(written, new String(stream.toByteArray(), "UTF-8"));
+        }
+    }
+
+    @Test(expected = JsonException.class)
+    public void testNonFiniteNumber() throws IOException, JsonException {
+        writeNumber(Double.NaN);
+    }
+
+    @Test
+    public void testValueTypes() throws IOException, JsonException {
+        Map<String, Object> tree = new TreeMap<String, Object>();
+        tree.put("b", new LinkedList<Object>(Arrays.asList((byte) 1, new BigDecimal("1.50"), 2.5f)));
+        tree.put("a", new ArrayList<Object>(Arrays.asList("x", 3L, false)));
+        Map<String, Object> subclass = new HashMap<String, Object>() {
+        };
+        subclass.put("tree", tree);
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        root.put("sub", subclass);
+        root.put("empty", new ArrayList<Object>());
+        StringWriter writer = new StringWriter();
+        JsonCharOutput output = new JsonCharOutput(writer);
+        output.writeValue(root);
+        output.flush();
+        assertEquals("{\"sub\":{\"tree\":{\"a\":[\"x\",3,false],\"b\":[1,1.50,2.5]}},\"empty\":[]}",
+                writer.toString());
+        for (int i = 0; i < 2; i++) {
+            try {
+                output.writeValue(new Object());
+                fail();
+            } catch (JsonException expected) {
+                assertTrue(expected.getMessage().startsWith("Invalid value"));
+            }
+        }
+    }
+
+    @Test
+    public void testArrays() throws IOException, JsonException {
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        root.put("ints", new int[]{1, -2, Integer.MAX_VALUE});
+        root.put("longs", new long[]{Long.MIN_VALUE});
+        root.put("doubles", new double[]{0.5, -0.0, 1e300});
+        root.put("booleans", new boolean[]{true, false});
+        root.put("objects", new Object[]{"a", null, new int[0]});
+        root.put("strings", new String[]{"b"});
+        root.put("fixed", Arrays.asList(1, 2));
+        String expected = "{\"ints\":[1,-2,2147483647],\"longs\":[-9223372036854775808],\"doubles\":[0.5,-0.0,1.0E300],"
+                + "\"booleans\":[true,false],\"objects\":[\"a\",null,[]],\"strings\":[\"b\"],\"fixed\":[1,2]}";
+        assertEquals(expected, JsonSerialization.writeJsonValue(new StringWriter(), root, 0, 0).toString());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonSerialization.writeJsonValue(stream, root, 0, 0);
+        assertEquals(expected, new String(stream.toByteArray(), "UTF-8"));
+
+        StringWriter indented = new StringWriter();
+        JsonSerialization.writeJsonValue(indented, new long[]{1, 2}, 2, 0);
+        assertEquals(JsonSerialization.writeJsonValue(new StringWriter(), Arrays.asList(1L, 2L), 2, 0).toString(),
+                indented.toString());
+        try {
+            JsonSerialization.writeJsonValue(new StringWriter(), new double[]{Double.NaN}, 0, 0);
+            fail();
+        } catch (JsonException expectedException) {
+            assertTrue(expectedException.getMessage().startsWith("Expected finite number"));
+        }
+    }
+}
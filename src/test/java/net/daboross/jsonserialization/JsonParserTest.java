@@ -24,7 +24,16 @@ package net.daboross.jsonserialization;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.CharConversionException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -62,6 +71,81 @@ public class JsonParserTest {
         assertEquals(new JsonParser("null").nextItem(), null);
     }
 
+    @Test
+    public void testLiteralsInContainers() throws IOException, JsonException {
+        List<Object> expectedList = Arrays.<Object>asList(true, false, null, true);
+        assertEquals(expectedList, new JsonParser("[true , FALSE,null ,True]").parseJsonArray());
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("a", null);
+        expected.put("b", false);
+        assertEquals(expected, new JsonParser("{\"a\":null,\"b\":false}").parseJsonObject());
+    }
+
+    @Test
+    public void testUnicodeEscapes() throws IOException, JsonException {
+        assertEquals("\u00e9\u65e5A", new JsonParser("\"\\u00e9\\u65E5\\u0041\"").nextItem());
+        assertEquals("x\ud83d\ude00y", new JsonParser("\"x\\uD83D\\uDE00y\"").nextItem());
+        assertEquals("\ud83dx\ud83dA\ude00", new JsonParser("\"\\uD83Dx\\uD83D\\u0041\\uDE00\"").nextItem());
+    }
+
+    @Test
+    public void testLoneSurrogateRoundTrip() throws IOException, JsonException {
+        List<Object> value = Arrays.<Object>asList("a\ud800b", "\udc00\ud800");
+        StringWriter writer = new StringWriter();
+        JsonCharOutput output = new JsonCharOutput(writer);
+        output.setEscapePolicy(JsonEscapePolicy.ASCII_ONLY);
+        output.writeValue(value);
+        output.flush();
+        assertEquals("[\"a\\ud800b\",\"\\udc00\\ud800\"]", writer.toString());
+        assertEquals(value, new JsonParser(writer.toString()).parseJsonArray());
+    }
+
+    @Test
+    public void testInvalidUnicodeEscapes() throws IOException {
+        for (String invalid : new String[]{"\\u12G4", "\\u12", "\\uD83D\\u12"}) {
+            try {
+                new JsonParser("\"" + invalid + "\"").nextItem();
+                fail("Expected JsonException for " + invalid);
+            } catch (JsonException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testLongStringsAcrossBufferRefills() throws IOException, JsonException {
+        StringBuilder json = new StringBuilder("\"");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            if (i % 1000 == 999) {
+                json.append("\\n\\u00e9\\\"");
+                expected.append("\n\u00e9\"");
+            } else {
+                json.append((char) ('a' + i % 26));
+                expected.append((char) ('a' + i % 26));
+            }
+        }
+        json.append('"');
+        assertEquals(expected.toString(), new JsonParser(json.toString()).nextString());
+        assertEquals(expected.toString(), new JsonParser(new TrickleReader(json.toString(), 100)).nextString());
+    }
+
+    @Test(expected = JsonException.class)
+    public void testNewlineInString() throws IOException, JsonException {
+        new JsonParser("\"abc\ndef\"").nextString();
+    }
+
+    @Test
+    public void testInvalidLiterals() throws IOException {
+        for (String invalid : new String[]{"nul", "truex", "fals e", "true false", "nulll"}) {
+            try {
+                new JsonParser("[" + invalid + "]").parseJsonArray();
+                fail("Expected JsonException for " + invalid);
+            } catch (JsonException expected) {
+                assertTrue(expected.getMessage().contains("found `" + invalid + "`"));
+            }
+        }
+    }
+
     @Test()
     public void testDoubleParsing() throws IOException, JsonException {
         Double testDouble = 0.01;
@@ -80,6 +164,79 @@ public class JsonParserTest {
         assertEquals(new JsonParser(testLong.toString()).nextItem(), testLong);
     }
 
+    @Test
+    public void testNumberTypeBoundaries() throws IOException, JsonException {
+        assertEquals(Integer.MAX_VALUE, new JsonParser("2147483647").nextItem());
+        assertEquals(Integer.MIN_VALUE, new JsonParser("-2147483648").nextItem());
+        assertEquals(2147483648L, new JsonParser("2147483648").nextItem());
+        assertEquals(Long.MIN_VALUE, new JsonParser("-9223372036854775808").nextItem());
+        assertEquals(9.223372036854775808E18, new JsonParser("9223372036854775808").nextItem());
+        assertEquals(-0.0, new JsonParser("-0.0").nextItem());
+        assertEquals(1.7976931348623157E308, new JsonParser("1.7976931348623157E308").nextItem());
+        assertEquals(9.007199254740993E15, new JsonParser("9007199254740993.0").nextItem());
+        assertEquals(Arrays.<Object>asList(1, 2.5, 3e5), new JsonParser("[1 , 2.5 ,3e5]").parseJsonArray());
+    }
+
+    @Test
+    public void testInvalidNumbers() throws IOException {
+        for (String invalid : new String[]{"1e", "--1", "1.2.3", "-", ".", "1x", "NaN", "0x10", "1 2"}) {
+            try {
+                new JsonParser("[" + invalid + "]").parseJsonArray();
+                fail("Expected JsonException for " + invalid);
+            } catch (JsonException expected) {
+                assertTrue(expected.getMessage().contains("found `" + invalid + "`"));
+            }
+        }
+    }
+
+    @Test
+    public void testHandlerEvents() throws IOException, JsonException {
+        final List<String> events = new ArrayList<String>();
+        new JsonParser("{\"a\": [1, \"s\", true, null], \"b\": {},}").parse(new JsonHandler() {
+            public void startObject() {
+                events.add("{");
+            }
+
+            public void key(String key) {
+                events.add(key + ":");
+            }
+
+            public void endObject() {
+                events.add("}");
+            }
+
+            public void startArray() {
+                events.add("[");
+            }
+
+            public void endArray() {
+                events.add("]");
+            }
+
+            public void stringValue(String value) {
+                events.add('"' + value + '"');
+            }
+
+            public void numberValue(Number value) {
+                events.add(value.toString());
+            }
+
+            public void booleanValue(boolean value) {
+                events.add(String.valueOf(value));
+            }
+
+            public void nullValue() {
+                events.add("null");
+            }
+        });
+        assertEquals(Arrays.asList("{", "a:", "[", "1", "\"s\"", "true", "null", "]", "b:", "{", "}", "}"), events);
+    }
+
+    @Test(expected = JsonException.class)
+    public void testDuplicateKey() throws IOException, JsonException {
+        new JsonParser("{\"a\": {\"b\": 1}, \"a\": [2]}").parseJsonObject();
+    }
+
     @Test(expected = JsonException.class)
     public void testArrayIsNotObject() throws IOException, JsonException {
         String serializedForm = "[\"value1\", \"value2\"]";
@@ -97,4 +254,294 @@ public class JsonParserTest {
         String serializedForm = "some_literal_string";
         new JsonParser(serializedForm).nextItem();
     }
+
+    @Test
+    public void testParsingAcrossBufferRefills() throws IOException, JsonException {
+        StringBuilder builder = new StringBuilder("[");
+        List<Object> expected = new ArrayList<Object>();
+        for (int i = 0; i < 5000; i++) {
+            builder.append(i).append(",\n\"s").append(i).append("\", ");
+            expected.add(i);
+            expected.add("s" + i);
+        }
+        builder.append("true]");
+        expected.add(Boolean.TRUE);
+        assertEquals(expected, new JsonParser(new TrickleReader(builder.toString(), 7)).parseJsonArray());
+    }
+
+    @Test
+    public void testPositionStringAcrossBufferRefills() throws IOException, JsonException {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < 3000; i++) {
+            builder.append("\"k").append(i).append("\": ").append(i).append(",\r\n");
+        }
+        builder.append("\"end\": nope}");
+        String fromString = null;
+        String fromReader = null;
+        try {
+            new JsonParser(builder.toString()).parseJsonObject();
+        } catch (JsonException ex) {
+            fromString = ex.getMessage();
+        }
+        try {
+            new JsonParser(new TrickleReader(builder.toString(), 1)).parseJsonObject();
+        } catch (JsonException ex) {
+            fromReader = ex.getMessage();
+        }
+        assertNotNull(fromString);
+        assertEquals(fromString, fromReader);
+    }
+
+    @Test
+    public void testCharArrayRangeParsing() throws IOException, JsonException {
+        char[] input = "xx[1, \"two\", {\"three\": 3}]yy".toCharArray();
+        List<Object> list = new JsonParser(input, 2, input.length - 4).parseJsonArray();
+        Map<String, Object> three = new HashMap<String, Object>();
+        three.put("three", 3);
+        assertEquals(Arrays.<Object>asList(1, "two", three), list);
+    }
+
+    @Test(expected = JsonException.class)
+    public void testCharArrayRangeEndsInput() throws IOException, JsonException {
+        char[] input = "[1, 2]".toCharArray();
+        new JsonParser(input, 0, 4).parseJsonArray();
+    }
+
+    @Test
+    public void testCharSequenceParsing() throws IOException, JsonException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            builder.append(builder.length() == 0 ? "[" : ",").append('"').append(i).append('"');
+        }
+        builder.append(']');
+        List<Object> fromBuilder = new JsonParser(builder).parseJsonArray();
+        List<Object> fromString = new JsonParser(builder.toString()).parseJsonArray();
+        assertEquals(3000, fromBuilder.size());
+        assertEquals("2999", fromBuilder.get(2999));
+        assertEquals(fromString, fromBuilder);
+    }
+
+    @Test
+    public void testUtf8ByteParsing() throws IOException, JsonException {
+        String text = "{\"ascii\": \"plain\", \"latin\": \"caf\u00e9\", \"cjk\": \"\u65e5\u672c\","
+                + " \"emoji\": \"\ud83d\ude00\"}";
+        Map<String, Object> expected = new JsonParser(text).parseJsonObject();
+        byte[] bytes = text.getBytes("UTF-8");
+        assertEquals(expected, new JsonParser(bytes).parseJsonObject());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(expected, new JsonParser(direct).parseJsonObject());
+        assertEquals(0, direct.position());
+        for (int chunk = 1; chunk < 5; chunk++) {
+            assertEquals(expected, new JsonParser(new TrickleInputStream(bytes, chunk)).parseJsonObject());
+        }
+    }
+
+    @Test
+    public void testUtf8ByteOrderMarkSkipped() throws IOException, JsonException {
+        byte[] bytes = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '[', '1', ']'};
+        assertEquals(Arrays.<Object>asList(1), new JsonParser(bytes).parseJsonArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedUtf8() throws IOException, JsonException {
+        byte[] bytes = {'"', 'a', (byte) 0xC3, 'b', '"'};
+        new JsonParser(bytes).nextItem();
+    }
+
+    @Test
+    public void testMappedFileParsing() throws IOException, JsonException {
+        String text = "[\"caf\u00e9\", \"\ud83d\ude00\", {\"n\": 12345678901},\n\"\u65e5\u672c\u8a9e\"]";
+        File file = File.createTempFile("json-parser-test", ".json");
+        file.deleteOnExit();
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(text.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        List<Object> expected = new JsonParser(text).parseJsonArray();
+        assertEquals(expected, new JsonParser(file).parseJsonArray());
+        // Small windows split multi-byte characters between mapped buffers.
+        for (int windowSize = 1; windowSize < 6; windowSize++) {
+            Reader reader = new Utf8Reader(JsonParser.mapFile(file, windowSize));
+            assertEquals(expected, new JsonParser(reader).parseJsonArray());
+        }
+    }
+
+    @Test
+    public void testParallelArrayMatchesSequential() throws IOException, JsonException {
+        StringBuilder input = new StringBuilder("\ufeff [");
+        for (int i = 0; i < 300; i++) {
+            input.append("{\"id\": ").append(i).append(", \"text\": \"a \\\"quoted\\\", ] \\\\\"")
+                    .append(", \"nested\": [[], {}, [").append(i * 0.5).append(", null, true]]},\r\n");
+        }
+        input.append("\"\u00e9\", ] trailing");
+        byte[] bytes = input.toString().getBytes("UTF-8");
+        List<Object> expected = new JsonParser(bytes).parseJsonArray();
+        assertEquals(301, expected.size());
+        for (int chunkSize : new int[]{1, 50, 1 << 20}) {
+            JsonArrayParallelReader reader = new JsonArrayParallelReader(bytes);
+            reader.setChunkSize(chunkSize);
+            assertEquals(expected, reader.parseJsonArray());
+        }
+        assertEquals(new ArrayList<Object>(), new JsonArrayParallelReader("[ ]".getBytes("UTF-8")).parseJsonArray());
+    }
+
+    @Test
+    public void testParallelArrayErrorPositions() throws IOException {
+        String[] inputs = {"[1, 2, 3 4, 5]", "[1, , 2]", "[1, {\"a\": 1]", "[1, 2", "{\"a\": 1}", "[1, \"x\ny\"]",
+                "[1, 2, [3, \"]\"}, 4]"};
+        for (String input : inputs) {
+            String sequentialMessage = null;
+            try {
+                new JsonParser(input).parseJsonArray();
+            } catch (JsonException ex) {
+                sequentialMessage = ex.getMessage();
+            }
+            assertNotNull(input, sequentialMessage);
+            JsonArrayParallelReader reader = new JsonArrayParallelReader(input.getBytes("UTF-8"));
+            reader.setChunkSize(1);
+            try {
+                reader.parseJsonArray();
+                fail(input);
+            } catch (JsonException ex) {
+                assertEquals(sequentialMessage, ex.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelArrayMalformedUtf8Position() throws IOException, JsonException {
+        byte[] input = "[\"a\", \"b\", \"c\", \"d\", \"e\", \"?\"]".getBytes("UTF-8");
+        input[input.length - 3] = (byte) 0xFF;
+        String sequentialMessage = null;
+        try {
+            new JsonParser(input).parseJsonArray();
+        } catch (CharConversionException ex) {
+            sequentialMessage = ex.getMessage();
+        }
+        assertNotNull(sequentialMessage);
+        JsonArrayParallelReader reader = new JsonArrayParallelReader(input);
+        reader.setChunkSize(4);
+        try {
+            reader.parseJsonArray();
+            fail();
+        } catch (CharConversionException ex) {
+            assertEquals(sequentialMessage, ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testPrimitiveArrays() throws IOException, JsonException {
+        assertArrayEquals(new int[]{1, -2, 3}, new JsonParser(" [1, -2 ,3,]").parseIntArray());
+        assertArrayEquals(new int[0], new JsonParser("[ ]").parseIntArray());
+        assertArrayEquals(new long[]{1, 12345678901L, Long.MIN_VALUE},
+                new JsonParser("[1, 12345678901, -9223372036854775808]").parseLongArray());
+        assertArrayEquals(new double[]{1, 2.5, -1e3, 1.2345678901234567e19, 0.1},
+                new JsonParser("[1, 2.5, -1E3, 12345678901234567890, 0.1]").parseDoubleArray(), 0);
+        StringBuilder input = new StringBuilder("[");
+        int[] expected = new int[1000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i * 31 - 5000;
+            input.append(expected[i]).append(',');
+        }
+        input.append(']');
+        assertArrayEquals(expected, new JsonParser(new TrickleReader(input.toString(), 7)).parseIntArray());
+    }
+
+    @Test
+    public void testPrimitiveArrayErrors() throws IOException {
+        String[] inputs = {"[1, 2.5]", "[12345678901]", "[1, \"a\"]", "[1, null]", "[1 2]", "[, 1]", "[1, , 2]",
+                "[1, 2", "{1}", "[1, [2]]", "[1, 2 }"};
+        for (String input : inputs) {
+            String sequentialMessage = null;
+            try {
+                new JsonParser(input).parseJsonArray();
+            } catch (JsonException ex) {
+                sequentialMessage = ex.getMessage();
+            }
+            try {
+                new JsonParser(input).parseIntArray();
+                fail(input);
+            } catch (JsonException ex) {
+                if (sequentialMessage != null) {
+                    assertEquals(sequentialMessage, ex.getMessage());
+                }
+            }
+        }
+        try {
+            new JsonParser("[1, 2.0]").parseLongArray();
+            fail();
+        } catch (JsonException ex) {
+            assertTrue(ex.getMessage().startsWith("Invalid json array: expected long, found `2.0`"));
+        }
+    }
+
+    @Test
+    public void testCompactNumericArrays() throws IOException, JsonException {
+        String input = "{\"a\": [1, 2, 3], \"b\": [1, 12345678901], \"c\": [0.5, 1e3], \"d\": [1, 2.5],"
+                + " \"e\": [1, \"x\"], \"f\": [], \"g\": [[1], [2.5]], \"h\": [1, [2]]}";
+        Map<String, Object> normal = new JsonParser(input).parseJsonObject();
+        JsonParser parser = new JsonParser(input);
+        parser.setCompactNumericArrays(true);
+        Map<String, Object> compact = parser.parseJsonObject();
+        assertEquals(normal, compact);
+        for (String key : Arrays.asList("a", "b", "c")) {
+            assertTrue(key, compact.get(key) instanceof JsonNumberList);
+        }
+        for (String key : Arrays.asList("d", "e", "f", "g", "h")) {
+            assertTrue(key, compact.get(key) instanceof ArrayList);
+        }
+        assertTrue(((List<?>) compact.get("g")).get(1) instanceof JsonNumberList);
+        JsonNumberList longs = (JsonNumberList) compact.get("b");
+        assertEquals(Integer.valueOf(1), longs.get(0));
+        assertEquals(12345678901L, longs.getLong(1));
+        assertFalse(longs.isDecimal());
+        assertEquals(1000.0, ((JsonNumberList) compact.get("c")).getDouble(1), 0);
+        assertEquals(JsonSerialization.writeJsonValue(new StringWriter(), normal, 2, 0).toString(),
+                JsonSerialization.writeJsonValue(new StringWriter(), compact, 2, 0).toString());
+    }
+
+    /**
+     * Reader which never returns more than a fixed number of characters from each read call.
+     */
+    private static class TrickleReader extends Reader {
+
+        private final Reader reader;
+        private final int maxRead;
+
+        public TrickleReader(String input, int maxRead) {
+            this.reader = new StringReader(input);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return reader.read(buffer, offset, Math.min(length, maxRead));
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * InputStream which never returns more than a fixed number of bytes from each read call.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        private final int maxRead;
+
+        public TrickleInputStream(byte[] input, int maxRead) {
+            super(input);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            return super.read(buffer, offset, Math.min(length, maxRead));
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Tests for JsonPullParser
+ * Copyright (c) 2015 David Ross <daboross@daboross.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.daboross.jsonserialization;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonPullParser}.
+ *
+ * @author daboross@daboross.net (David Ross)
+ */
+public class JsonPullParserTest {
+
+    private static List<Object> readAll(String json) throws IOException, JsonException {
+        JsonPullParser parser = new JsonPullParser(new JsonParser(json));
+        List<Object> tokens = new ArrayList<Object>();
+        for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+            tokens.add(token);
+            if (parser.getValue() != null) {
+                tokens.add(parser.getValue());
+            }
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testTokenSequence() throws IOException, JsonException {
+        List<Object> expected = Arrays.<Object>asList(JsonToken.START_OBJECT,
+                JsonToken.FIELD_NAME, "a", JsonToken.START_ARRAY,
+                JsonToken.VALUE_NUMBER, 1, JsonToken.VALUE_NUMBER, 2.5, JsonToken.VALUE_STRING, "x",
+                JsonToken.VALUE_TRUE, true, JsonToken.VALUE_FALSE, false, JsonToken.VALUE_NULL,
+                JsonToken.END_ARRAY,
+                JsonToken.FIELD_NAME, "b", JsonToken.START_OBJECT, JsonToken.END_OBJECT,
+                JsonToken.END_OBJECT);
+        assertEquals(expected, readAll("{\"a\": [1, 2.5, \"x\", true, false, null], \"b\": {}}"));
+    }
+
+    @Test
+    public void testTrailingCommas() throws IOException, JsonException {
+        List<Object> expected = Arrays.<Object>asList(JsonToken.START_ARRAY, JsonToken.START_OBJECT,
+                JsonToken.FIELD_NAME, "k", JsonToken.VALUE_NUMBER, 1, JsonToken.END_OBJECT, JsonToken.END_ARRAY);
+        assertEquals(expected, readAll("[{\"k\": 1,},]"));
+    }
+
+    @Test
+    public void testTopLevelScalar() throws IOException, JsonException {
+        assertEquals(Arrays.<Object>asList(JsonToken.VALUE_STRING, "text"), readAll("\"text\""));
+    }
+
+    @Test
+    public void testSkipChildren() throws IOException, JsonException {
+        JsonPullParser parser = new JsonPullParser(new JsonParser(
+                "{\"skip\": {\"a\": [1, \"]}\", {\"b\": \"\\\"\"}]}, \"keep\": 2}"));
+        assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        parser.skipChildren();
+        assertEquals(JsonToken.END_OBJECT, parser.getCurrentToken());
+        assertEquals(1, parser.getDepth());
+        assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals("keep", parser.getString());
+        assertEquals(JsonToken.VALUE_NUMBER, parser.nextToken());
+        assertEquals(2, parser.getNumber());
+        assertEquals(JsonToken.END_OBJECT, parser.nextToken());
+        assertNull(parser.nextToken());
+    }
+
+    @Test(expected = JsonException.class)
+    public void testMissingColon() throws IOException, JsonException {
+        readAll("{\"a\" 1}");
+    }
+
+    @Test(expected = JsonException.class)
+    public void testUnterminatedArray() throws IOException, JsonException {
+        readAll("[1, 2");
+    }
+}